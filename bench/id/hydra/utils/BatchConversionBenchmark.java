@@ -0,0 +1,129 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compare converting a price list into many target currencies one amount at a
+ * time (Currency.calculateExchangeRate() and FixedPointRates.convert()) with
+ * BatchConverter, on the calling thread and split over the common pool
+ *
+ * @author ShinyDove
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchConversionBenchmark {
+
+    @Param({"1000", "500000"})
+    public int size;
+
+    @Param({"30"})
+    public int targets;
+
+    private List<Currency> targetCurrencies;
+    private RateTable rateTable;
+    private FixedPointRates fixedPointRates;
+    private BatchConverter sequential, parallel;
+    private int usdId;
+    private int[] targetIds;
+    private double[] amounts;
+    private long[] minorAmounts;
+    private double[][] results;
+    private long[][] minorResults;
+
+    @Setup
+    public void setup() throws Exception {
+        ArrayList<Currency> usdTable = Fixtures.parse("usd");
+        rateTable = new RateTable("usd", usdTable);
+        fixedPointRates = new FixedPointRates("usd", usdTable);
+        sequential = new BatchConverter(ForkJoinPool.commonPool(), Long.MAX_VALUE);
+        parallel = new BatchConverter(ForkJoinPool.commonPool(), 1 << 16);
+
+        usdId = CurrencyCode.idOf("USD");
+        targetCurrencies = usdTable.subList(0, targets);
+        targetIds = new int[targets];
+        for (int t = 0; t < targets; t++) {
+            targetIds[t] = CurrencyCode.idOf(targetCurrencies.get(t).getTargetCurrencyCode());
+        }
+
+        Random random = new Random(42);
+        amounts = new double[size];
+        minorAmounts = new long[size];
+        for (int i = 0; i < size; i++) {
+            minorAmounts[i] = 100 + random.nextInt(10000000);
+            amounts[i] = minorAmounts[i] / 100.0;
+        }
+        results = new double[targets][size];
+        minorResults = new long[targets][size];
+    }
+
+    @Benchmark
+    public double[][] scalarCalculateExchangeRate() {
+        for (int t = 0; t < targets; t++) {
+            Currency curr = targetCurrencies.get(t);
+            double[] result = results[t];
+            for (int i = 0; i < size; i++) {
+                result[i] = curr.calculateExchangeRate(amounts[i]);
+            }
+        }
+        return results;
+    }
+
+    @Benchmark
+    public double[][] batchConvert() {
+        sequential.convert(rateTable, usdId, targetIds, amounts, results);
+        return results;
+    }
+
+    @Benchmark
+    public double[][] batchConvertParallel() {
+        parallel.convert(rateTable, usdId, targetIds, amounts, results);
+        return results;
+    }
+
+    @Benchmark
+    public long[][] scalarFixedPointConvert() {
+        for (int t = 0; t < targets; t++) {
+            long[] result = minorResults[t];
+            for (int i = 0; i < size; i++) {
+                result[i] = fixedPointRates.convert(usdId, targetIds[t], minorAmounts[i]);
+            }
+        }
+        return minorResults;
+    }
+
+    @Benchmark
+    public long[][] batchFixedPointConvert() {
+        sequential.convert(fixedPointRates, usdId, targetIds, minorAmounts, minorResults);
+        return minorResults;
+    }
+
+    @Benchmark
+    public long[][] batchFixedPointConvertParallel() {
+        parallel.convert(fixedPointRates, usdId, targetIds, minorAmounts, minorResults);
+        return minorResults;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compare String code based conversions over Currency objects with the
+ * primitive RateTable path. Run with "-prof gc" to see the allocation rate.
+ *
+ * @author ShinyDove
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConversionBenchmark {
+
+    @Param({"EUR"})
+    public String from;
+
+    @Param({"IDR"})
+    public String to;
+
+    private ArrayList<Currency> usdTable;
+    private Currency direct;
+    private RateTable rateTable;
+    private int fromId, toId;
+    private double amount = 25;
+
+    @Setup
+    public void setup() throws Exception {
+        usdTable = Fixtures.parse("usd");
+        direct = find(usdTable, to);
+        rateTable = new RateTable("usd", usdTable);
+        fromId = CurrencyCode.idOf(from);
+        toId = CurrencyCode.idOf(to);
+    }
+
+    private static Currency find(ArrayList<Currency> table, String code) {
+        for (Currency curr : table) {
+            if (curr.getTargetCurrencyCode().toUpperCase().equals(code.toUpperCase())) {
+                return curr;
+            }
+        }
+        throw new IllegalArgumentException(code);
+    }
+
+    @Benchmark
+    public double currencyCalculate() {
+        // Direct USD quote, already resolved
+        return direct.calculateExchangeRate(amount);
+    }
+
+    @Benchmark
+    public double currencyCodesCross() {
+        // Typical String code call site: look both currencies up and go through USD with boxed rates
+        Double fromRate = find(usdTable, from).getCurrencyExchangeRate(true);
+        Double toRate = find(usdTable, to).getCurrencyExchangeRate(false);
+        return amount * fromRate * toRate;
+    }
+
+    @Benchmark
+    public double rateTableConvert() {
+        return rateTable.convert(fromId, toId, amount);
+    }
+}
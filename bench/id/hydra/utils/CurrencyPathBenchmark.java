@@ -0,0 +1,182 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measure every step of a command line query against a generated floatrates
+ * feed resized to feedSize entries (entries past the generated ones are copies
+ * with unused three letter codes): JSONObject and streaming parsing, single-pair lookup,
+ * comparator sorting, Currency.calculateExchangeRate() and the table output
+ * formatting. Set the thread count with "-t", e.g.
+ * ant bench -Dbench.args="CurrencyPathBenchmark" -Dbench.threads=4
+ *
+ * @author ShinyDove
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CurrencyPathBenchmark {
+
+    /**
+     * Output stream of each benchmark thread, discarding what is printed
+     */
+    @State(Scope.Thread)
+    public static class Output {
+
+        PrintStream out;
+
+        @Setup
+        public void setup() {
+            out = new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            });
+        }
+    }
+
+    @Param({"usd"})
+    public String feed;
+
+    @Param({"20", "210", "1000"})
+    public int feedSize;
+
+    private byte[] json;
+    private JSONObject parsed;
+    private ArrayList<Currency> table;
+    private CurrencyTable indexed;
+    private String target;
+
+    @Setup
+    public void setup() throws Exception {
+        JSONObject generated = new JSONObject(new String(Fixtures.read(feed), StandardCharsets.UTF_8));
+        List<JSONObject> entries = new ArrayList<>();
+        for (Iterator<String> keys = generated.keys(); keys.hasNext();) {
+            entries.add(generated.getJSONObject(keys.next()));
+        }
+
+        JSONObject resized = new JSONObject();
+        int unused = 0;
+        for (int i = 0; i < feedSize; i++) {
+            JSONObject entry = new JSONObject(entries.get(i % entries.size()).toString());
+            if (i >= entries.size()) {
+                String code;
+                do {
+                    code = "" + (char) ('A' + unused / 676) + (char) ('A' + unused / 26 % 26) + (char) ('A' + unused % 26);
+                    unused++;
+                } while (generated.has(code.toLowerCase()));
+                entry.put("code", code).put("alphaCode", code).put("name", entry.getString("name") + " " + code);
+            }
+            resized.put(entry.getString("code").toLowerCase(), entry);
+        }
+        json = resized.toString().getBytes(StandardCharsets.UTF_8);
+        parsed = new JSONObject(new String(json, StandardCharsets.UTF_8));
+
+        try (RateFeedReader reader = new RateFeedReader(new ByteArrayInputStream(json), feed)) {
+            table = reader.readAll();
+        }
+        indexed = new CurrencyTable(feed, table);
+        // A pair from the middle of the feed, the average case of a scan
+        target = table.get(table.size() / 2).getTargetCurrencyCode();
+    }
+
+    @Benchmark
+    public ArrayList<Currency> parseJsonObject() {
+        // The former CurrencyParser.getCurrencyExchangeLists() path, without the Scanner
+        JSONObject obj = new JSONObject(new String(json, StandardCharsets.UTF_8));
+        Iterator<String> keys = obj.keys();
+        ArrayList<Currency> currLists = new ArrayList<>();
+        while (keys.hasNext()) {
+            JSONObject currJSON = obj.getJSONObject(keys.next());
+            currLists.add(new Currency(currJSON.getString("name").replaceAll("\t", "").replaceAll("convertible ", ""),
+                    feed.toUpperCase(), currJSON.getString("code"), currJSON.getDouble("rate"), currJSON.getDouble("inverseRate")));
+        }
+        return currLists;
+    }
+
+    @Benchmark
+    public ArrayList<Currency> parseStreaming() throws Exception {
+        try (RateFeedReader reader = new RateFeedReader(new ByteArrayInputStream(json), feed)) {
+            return reader.readAll();
+        }
+    }
+
+    @Benchmark
+    public Currency lookupJsonObject() {
+        // The former single-pair lookup of CurrencyParser.getBetweenCurrencyExchangeRate()
+        // in the parsed feed, without the parsing
+        JSONObject currJSON = parsed.getJSONObject(target.toLowerCase());
+        return new Currency(currJSON.getString("name"), feed.toUpperCase(), target.toUpperCase(),
+                currJSON.getDouble("rate"), currJSON.getDouble("inverseRate"));
+    }
+
+    @Benchmark
+    public Currency lookupIndexed() {
+        return indexed.get(target);
+    }
+
+    @Benchmark
+    public List<Currency> sortByName() {
+        List<Currency> sorted = new ArrayList<>(table);
+        sorted.sort(Currency.CurrencyNameComparator);
+        return sorted;
+    }
+
+    @Benchmark
+    public List<Currency> sortByCode() {
+        List<Currency> sorted = new ArrayList<>(table);
+        sorted.sort(Currency.CurrencyCodeComparator);
+        return sorted;
+    }
+
+    @Benchmark
+    public double calculateAll() {
+        double sum = 0;
+        for (Currency curr : table) {
+            sum += curr.calculateExchangeRate(25) + curr.calculateReverseExchangeRate(25);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public void formatTable(Output output) {
+        // The row format of the buy / sell exchange table
+        PrintStream out = output.out;
+        for (Currency curr : table) {
+            out.printf("%-30s : %s %15.5f | %s %15.5f%n", curr.getTargetCurrencyExchangeName(),
+                    curr.getLocalCurrencyCode(), curr.getCurrencyExchangeRate(true),
+                    curr.getTargetCurrencyCode(), curr.getCurrencyExchangeRate(false));
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+/**
+ * The feed fixtures of the benchmarks, read from the directory set with
+ * -Dbench.fixtures.dir (bench/fixtures by default). The fixtures are
+ * generated feeds in floatrates format, not captured ones, see the README.
+ *
+ * @author ShinyDove
+ */
+final class Fixtures {
+
+    private Fixtures() {
+    }
+
+    /**
+     * Read the raw feed of a base currency
+     *
+     * @param base the base currency code, e.g. "usd"
+     * @return the feed JSON
+     * @throws IOException if the fixture could not be read
+     */
+    static byte[] read(String base) throws IOException {
+        return Files.readAllBytes(Paths.get(System.getProperty("bench.fixtures.dir", "bench/fixtures"), base + ".generated.json"));
+    }
+
+    /**
+     * Parse the feed of a base currency
+     *
+     * @param base the base currency code, e.g. "usd"
+     * @return Currency exchange list of the base currency
+     * @throws IOException if the fixture could not be read or parsed
+     */
+    static ArrayList<Currency> parse(String base) throws IOException {
+        try (RateFeedReader reader = new RateFeedReader(new ByteArrayInputStream(read(base)), base)) {
+            return reader.readAll();
+        }
+    }
+}
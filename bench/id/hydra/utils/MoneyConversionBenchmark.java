@@ -0,0 +1,79 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compare converting minor-unit amounts with double arithmetic, with BigDecimal
+ * (as a ledger would wrap every result) and with FixedPointRates. Run with
+ * "-prof gc" to see the allocation rate.
+ *
+ * @author ShinyDove
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoneyConversionBenchmark {
+
+    @Param({"EUR"})
+    public String from;
+
+    @Param({"IDR"})
+    public String to;
+
+    private FixedPointRates fixedPointRates;
+    private RateTable rateTable;
+    private BigDecimal exactRate;
+    private int fromId, toId, fromPlaces, toPlaces;
+    private long amount = 123456789L;
+
+    @Setup
+    public void setup() throws Exception {
+        ArrayList<Currency> usdTable = Fixtures.parse("usd");
+        fixedPointRates = new FixedPointRates("usd", usdTable);
+        rateTable = new RateTable("usd", usdTable);
+        fromId = CurrencyCode.idOf(from);
+        toId = CurrencyCode.idOf(to);
+        fromPlaces = fixedPointRates.getDecimalPlaces(fromId);
+        toPlaces = fixedPointRates.getDecimalPlaces(toId);
+        exactRate = BigDecimal.valueOf(fixedPointRates.getScaledRate(fromId, toId), FixedPointRates.RATE_SCALE);
+    }
+
+    @Benchmark
+    public long doubleConvert() {
+        double major = amount / Math.pow(10, fromPlaces);
+        return Math.round(rateTable.convert(fromId, toId, major) * Math.pow(10, toPlaces));
+    }
+
+    @Benchmark
+    public long bigDecimalConvert() {
+        return BigDecimal.valueOf(amount, fromPlaces).multiply(exactRate)
+                .setScale(toPlaces, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+    }
+
+    @Benchmark
+    public long fixedPointConvert() {
+        return fixedPointRates.convert(fromId, toId, amount);
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compare revaluing a portfolio of positions spread over every currency of a
+ * generated feed after a rate refresh: the full recompute with
+ * Currency.calculateExchangeRate() over every position against
+ * PortfolioRevaluer applying a delta of changedRates rates, and the cost of
+ * adding single positions from many threads, e.g. "-t 4".
+ *
+ * @author ShinyDove
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PortfolioRevaluationBenchmark {
+
+    @Param({"usd"})
+    public String feed;
+
+    @Param({"1000000"})
+    public int positions;
+
+    @Param({"1", "20"})
+    public int changedRates;
+
+    private Currency[] tableById;
+    private Currency reporting;
+    private int[] currencyIds;
+    private double[] amounts;
+    private PortfolioRevaluer revaluer;
+    private RateDelta[] deltas;
+    private long refreshes;
+
+    @Setup
+    public void setup() throws Exception {
+        List<Currency> table = Fixtures.parse(feed);
+        tableById = new Currency[CurrencyCode.size()];
+        for (Currency curr : table) {
+            tableById[CurrencyCode.idOf(curr.getTargetCurrencyCode())] = curr;
+        }
+        reporting = tableById[CurrencyCode.idOf("IDR")];
+
+        Random random = new Random(42);
+        currencyIds = new int[positions];
+        amounts = new double[positions];
+        for (int i = 0; i < positions; i++) {
+            currencyIds[i] = CurrencyCode.idOf(table.get(random.nextInt(table.size())).getTargetCurrencyCode());
+            amounts[i] = random.nextInt(10000000) / 100.0;
+        }
+        revaluer = new PortfolioRevaluer(feed, table, "idr");
+        revaluer.addPositions(currencyIds, amounts);
+        revaluer.revalue();
+
+        // Two deltas moving the same rates up and back down, applied in turn
+        deltas = new RateDelta[2];
+        for (int d = 0; d < 2; d++) {
+            List<RateDelta.Change> changes = new ArrayList<>();
+            for (int i = 0; i < changedRates; i++) {
+                Currency curr = table.get(i * table.size() / changedRates);
+                double up = curr.getExchangeRate() * 1.001;
+                changes.add(new RateDelta.Change(curr.getTargetCurrencyCode(),
+                        (d == 0) ? curr.getExchangeRate() : up, (d == 0) ? up : curr.getExchangeRate()));
+            }
+            deltas[d] = new RateDelta(revaluer.getBaseCurrencyCode(), d + 1, 0, changes, table.size() - changedRates);
+        }
+    }
+
+    @Benchmark
+    public double fullRecompute() {
+        double total = 0;
+        for (int i = 0; i < currencyIds.length; i++) {
+            total += reporting.calculateExchangeRate(tableById[currencyIds[i]].calculateReverseExchangeRate(amounts[i]));
+        }
+        return total;
+    }
+
+    @Benchmark
+    public double revalueDelta() {
+        revaluer.onRateDelta(deltas[(int) (refreshes++ & 1)]);
+        return revaluer.getTotal();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void addPosition() {
+        revaluer.addPosition(currencyIds[0], 1);
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compare the former Scanner + JSONObject feed parsing path with the streaming
+ * RateFeedReader, both reading a generated floatrates feed from memory.
+ *
+ * @author ShinyDove
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RateFeedParseBenchmark {
+
+    @Param({"usd"})
+    public String feed;
+
+    private byte[] json;
+
+    @Setup
+    public void setup() throws Exception {
+        json = Fixtures.read(feed);
+    }
+
+    @Benchmark
+    public ArrayList<Currency> jsonObject() {
+        // The former CurrencyParser.getCurrencyExchangeLists() path
+        Scanner scan = new Scanner(new ByteArrayInputStream(json), "UTF-8");
+        String str = new String();
+        while (scan.hasNext()) {
+            str += scan.nextLine();
+        }
+        scan.close();
+
+        JSONObject obj = new JSONObject(str);
+        Iterator<String> keys = obj.keys();
+        ArrayList<Currency> currLists = new ArrayList<>();
+        while (keys.hasNext()) {
+            JSONObject currJSON = obj.getJSONObject(keys.next());
+            String target_target_curr_name = currJSON.getString("name").replaceAll("\t", "").replaceAll("convertible ", "");
+            String target_curr_code = currJSON.getString("code");
+            Double curr_rate = currJSON.getDouble("rate");
+            Double curr_rrate = currJSON.getDouble("inverseRate");
+            currLists.add(new Currency(target_target_curr_name, feed.toUpperCase(), target_curr_code, curr_rate, curr_rrate));
+        }
+        return currLists;
+    }
+
+    @Benchmark
+    public ArrayList<Currency> streaming() throws Exception {
+        try (RateFeedReader reader = new RateFeedReader(new ByteArrayInputStream(json), feed)) {
+            return reader.readAll();
+        }
+    }
+}
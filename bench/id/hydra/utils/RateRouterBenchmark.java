@@ -0,0 +1,95 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measure RateRouter with the tables of bases base currencies, derived from a
+ * generated feed as cross rates with up to 0.1% of noise so that tables
+ * disagree: best routes of 2 and 3 hops, a refresh of one base table, and an
+ * arbitrage scan of 3-hop cycles.
+ *
+ * @author ShinyDove
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RateRouterBenchmark {
+
+    @Param({"usd"})
+    public String feed;
+
+    @Param({"150"})
+    public int bases;
+
+    private RateRouter router;
+    private List<List<Currency>> tables;
+    private List<String> baseCodes;
+    private int refreshed;
+
+    @Setup
+    public void setup() throws Exception {
+        List<Currency> generated = Fixtures.parse(feed);
+
+        Random random = new Random(42);
+        router = new RateRouter();
+        tables = new ArrayList<>();
+        baseCodes = new ArrayList<>();
+        for (int b = 0; b < Math.min(bases, generated.size()); b++) {
+            Currency base = generated.get(b);
+            List<Currency> table = new ArrayList<>();
+            for (Currency curr : generated) {
+                if (curr != base) {
+                    double rate = curr.getExchangeRate() * base.getReverseExchangeRate() * (1 + 0.001 * (random.nextDouble() - 0.5));
+                    table.add(new Currency(curr.getTargetCurrencyExchangeName(), base.getTargetCurrencyCode(), curr.getTargetCurrencyCode(), rate, 1 / rate));
+                }
+            }
+            router.update(base.getTargetCurrencyCode(), table);
+            tables.add(table);
+            baseCodes.add(base.getTargetCurrencyCode());
+        }
+    }
+
+    @Benchmark
+    public RateRouter.Route bestRoute2() {
+        return router.findBestRoute("eur", "idr", 2);
+    }
+
+    @Benchmark
+    public RateRouter.Route bestRoute3() {
+        return router.findBestRoute("eur", "idr", 3);
+    }
+
+    @Benchmark
+    public void updateBase() {
+        int b = refreshed++ % tables.size();
+        router.update(baseCodes.get(b), tables.get(b));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<RateRouter.Route> findArbitrage() {
+        return router.findArbitrage(0.001, 3);
+    }
+}
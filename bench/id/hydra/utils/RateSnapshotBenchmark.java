@@ -0,0 +1,94 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Measure reader throughput while a refresher keeps replacing the USD and EUR
+ * tables, with readers going through an atomically swapped RateSnapshot and
+ * through a synchronized holder looking rates up under its lock. Raise the
+ * reader count with "-tg 7,1".
+ *
+ * @author ShinyDove
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RateSnapshotBenchmark {
+
+    private final AtomicReference<RateSnapshot> published = new AtomicReference<>(RateSnapshot.EMPTY);
+    private final Object lock = new Object();
+    private RateSnapshot guarded;
+    private ArrayList<Currency> usdTable, eurTable;
+    private boolean refreshUsd;
+
+    @Setup
+    public void setup() throws Exception {
+        usdTable = Fixtures.parse("usd");
+        eurTable = Fixtures.parse("eur");
+        published.set(RateSnapshot.EMPTY.with("usd", usdTable).with("eur", eurTable));
+        guarded = published.get();
+    }
+
+    @Benchmark
+    @Group("atomicSnapshot")
+    @GroupThreads(3)
+    public double atomicSnapshotRead() {
+        RateSnapshot snapshot = published.get();
+        return snapshot.getRate("EUR", "IDR") + snapshot.getRate("USD", "JPY");
+    }
+
+    @Benchmark
+    @Group("atomicSnapshot")
+    @GroupThreads(1)
+    public RateSnapshot atomicSnapshotRefresh() {
+        final boolean usd = refreshUsd = !refreshUsd;
+        return published.updateAndGet((RateSnapshot current) -> usd ? current.with("usd", usdTable) : current.with("eur", eurTable));
+    }
+
+    @Benchmark
+    @Group("synchronizedHolder")
+    @GroupThreads(3)
+    public double synchronizedHolderRead() {
+        synchronized (lock) {
+            return guarded.getRate("EUR", "IDR") + guarded.getRate("USD", "JPY");
+        }
+    }
+
+    @Benchmark
+    @Group("synchronizedHolder")
+    @GroupThreads(1)
+    public RateSnapshot synchronizedHolderRefresh() {
+        refreshUsd = !refreshUsd;
+        RateSnapshot current;
+        synchronized (lock) {
+            current = guarded;
+        }
+        // Built outside the lock like any holder would, only the swap blocks the readers
+        RateSnapshot next = refreshUsd ? current.with("usd", usdTable) : current.with("eur", eurTable);
+        synchronized (lock) {
+            guarded = next;
+        }
+        return next;
+    }
+}
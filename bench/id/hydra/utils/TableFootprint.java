@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measure the retained heap of the tables of many base currencies, kept as
+ * parsed ArrayList&lt;Currency&gt; and as ColumnarCurrencyTable. Every base
+ * table is parsed from its own copy of the generated feed, as the cache does
+ * with fetched feeds. The heap is measured after full collections, so run it
+ * alone with a fixed heap:
+ * ant bench-footprint -Dbench.args="usd 150"
+ *
+ * @author ShinyDove
+ */
+public class TableFootprint {
+
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    public static void main(String[] args) throws Exception {
+        String feed = (args.length > 0) ? args[0] : "usd";
+        int bases = (args.length > 1) ? Integer.parseInt(args[1]) : 150;
+        byte[] json = Fixtures.read(feed);
+
+        List<String> codes = new ArrayList<>();
+        for (Currency curr : parse(json, feed)) {
+            codes.add(curr.getTargetCurrencyCode());
+        }
+        bases = Math.min(bases, codes.size());
+        // Register the codes and names first, they are shared by every table
+        new ColumnarCurrencyTable(feed, parse(json, feed));
+
+        long before = usedHeap();
+        Object[] lists = new Object[bases];
+        long entries = 0;
+        for (int i = 0; i < bases; i++) {
+            ArrayList<Currency> list = parse(json, codes.get(i));
+            list.trimToSize();
+            lists[i] = list;
+            entries += list.size();
+        }
+        long listBytes = usedHeap() - before;
+        keep(lists);
+        lists = null;
+
+        before = usedHeap();
+        Object[] tables = new Object[bases];
+        for (int i = 0; i < bases; i++) {
+            tables[i] = new ColumnarCurrencyTable(codes.get(i), parse(json, codes.get(i)));
+        }
+        long columnarBytes = usedHeap() - before;
+        keep(tables);
+
+        System.out.printf("%d base tables, %d entries%n", bases, entries);
+        System.out.printf("%-26s %12s %12s %10s%n", "Representation", "Bytes", "Per base", "Per entry");
+        print("ArrayList<Currency>", listBytes, bases, entries);
+        print("ColumnarCurrencyTable", columnarBytes, bases, entries);
+        System.out.printf("Shared registries: %d codes, %d names%n", CurrencyCode.size(), CurrencyNames.size());
+    }
+
+    private static ArrayList<Currency> parse(byte[] json, String base) throws Exception {
+        try (RateFeedReader reader = new RateFeedReader(new ByteArrayInputStream(json), base)) {
+            return reader.readAll();
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        long used = Long.MAX_VALUE;
+        // Take the lowest of a few collections, one may leave garbage behind
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            Thread.sleep(50);
+            used = Math.min(used, MEMORY.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+
+    private static void keep(Object[] held) {
+        if (held.length > 0 && held[held.length - 1] == null) {
+            throw new IllegalStateException();
+        }
+    }
+
+    private static void print(String name, long bytes, int bases, long entries) {
+        System.out.printf("%-26s %12d %12d %10.1f%n", name, bytes, bytes / bases, (double) bytes / entries);
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compare printing the USD and EUR exchange tables row by row with printf, as
+ * the command line did, with TableRenderer flushing into the same PrintStream
+ * and into a byte channel. Both outputs are discarded. The renderers are
+ * created once per format, so only rendering is measured (the CSV header is
+ * only written by the first invocation). Run with "-prof gc" to see the
+ * allocation rate.
+ *
+ * @author ShinyDove
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TableRendererBenchmark {
+
+    /**
+     * The tables and the outputs of each benchmark thread, discarding what is
+     * written
+     */
+    @State(Scope.Thread)
+    public static class Output {
+
+        final ArrayList<Currency> tables = new ArrayList<>();
+        PrintStream out;
+        WritableByteChannel channel;
+
+        @Setup
+        public void setup() throws Exception {
+            for (String base : new String[]{"usd", "eur"}) {
+                tables.addAll(Fixtures.parse(base));
+            }
+            out = new PrintStream(new OutputStream() {
+                @Override
+                public void write(int b) {
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                }
+            }, false, "UTF-8");
+            channel = new WritableByteChannel() {
+                @Override
+                public int write(ByteBuffer src) {
+                    int length = src.remaining();
+                    src.position(src.limit());
+                    return length;
+                }
+
+                @Override
+                public boolean isOpen() {
+                    return true;
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+    }
+
+    /**
+     * The renderers of each benchmark thread in one format
+     */
+    @State(Scope.Thread)
+    public static class Renderers {
+
+        @Param({"TEXT", "CSV", "JSONL"})
+        public TableRenderer.Format format;
+
+        TableRenderer toStream, toChannel;
+
+        @Setup
+        public void setup(Output output) {
+            toStream = new TableRenderer(output.out, format);
+            toChannel = new TableRenderer(output.channel, StandardCharsets.UTF_8, format);
+        }
+    }
+
+    @Benchmark
+    public void printf(Output output) {
+        // The former row format of the exchange table
+        for (Currency curr : output.tables) {
+            output.out.printf("%-30s : %s %15.5f | %s %15.5f%n", curr.getTargetCurrencyExchangeName(),
+                    curr.getTargetCurrencyCode(), curr.getCurrencyExchangeRate(false),
+                    curr.getLocalCurrencyCode(), curr.getCurrencyExchangeRate(true));
+        }
+    }
+
+    @Benchmark
+    public void rendererToStream(Output output, Renderers renderers) throws Exception {
+        for (Currency curr : output.tables) {
+            renderers.toStream.exchange(curr, false);
+        }
+        renderers.toStream.flush();
+    }
+
+    @Benchmark
+    public void rendererToChannel(Output output, Renderers renderers) throws Exception {
+        for (Currency curr : output.tables) {
+            renderers.toChannel.exchange(curr, false);
+        }
+        renderers.toChannel.flush();
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Rate source querying several sources, best ranked first. When the ranked
+ * source has not answered within its latency percentile (e.g. its 95th), a
+ * hedged request goes to the next source, and so on, and the first valid
+ * (non-empty) table wins. A failing source hands over to the next one right
+ * away. Every source has its own latency histogram, and sources are ranked by
+ * median latency, penalized by their failure ratio.
+ * <br> Example: <code>new AggregatingRateSource(Arrays.asList(primary, mirror), 95, 500, 30000, TimeUnit.MILLISECONDS)</code>
+ *
+ * @author ShinyDove
+ */
+public class AggregatingRateSource implements RateSource {
+
+    /**
+     * Samples a source needs before its own latencies decide its rank and
+     * hedge delay
+     */
+    private static final int MIN_SAMPLES = 5;
+
+    /**
+     * Source names to look up on first use, as looking them up while
+     * ServiceLoader creates this source would create it again
+     */
+    private final String sourceNames;
+    private volatile List<RateSource> sources;
+    private volatile Map<RateSource, LatencyHistogram> histograms;
+    private final double hedgePercentile;
+    private final long defaultHedgeDelayNanos, timeoutNanos;
+    private final ExecutorService executor;
+
+    /**
+     * Create an aggregating source of the sources named by the
+     * "jsoncurrency.source.aggregate" system property (comma separated,
+     * "floatrates,directory" if not set), hedging at the 95th percentile
+     */
+    public AggregatingRateSource() {
+        this(System.getProperty("jsoncurrency.source.aggregate", "floatrates,directory"), null, 95, 500, 60000, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Create an aggregating source
+     *
+     * @param sources the sources to query, in preferred order until their
+     * latencies are known
+     * @param hedgePercentile the latency percentile of a source after which
+     * the next source is queried as well, e.g. 95
+     * @param defaultHedgeDelay the hedge delay of sources with too few samples
+     * @param timeout the time limit of a whole fetch
+     * @param unit the time unit of defaultHedgeDelay and timeout
+     */
+    public AggregatingRateSource(List<? extends RateSource> sources, double hedgePercentile, long defaultHedgeDelay, long timeout, TimeUnit unit) {
+        this(null, sources, hedgePercentile, defaultHedgeDelay, timeout, unit);
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("At least one rate source is required");
+        }
+    }
+
+    private AggregatingRateSource(String sourceNames, List<? extends RateSource> sources, double hedgePercentile, long defaultHedgeDelay, long timeout, TimeUnit unit) {
+        if (hedgePercentile <= 0 || hedgePercentile > 100 || defaultHedgeDelay < 0 || timeout <= 0) {
+            throw new IllegalArgumentException("Percentile must be within (0, 100] and timeout must be positive");
+        }
+        this.sourceNames = sourceNames;
+        if (sources != null) {
+            setSources(sources);
+        }
+        this.hedgePercentile = hedgePercentile;
+        this.defaultHedgeDelayNanos = unit.toNanos(defaultHedgeDelay);
+        this.timeoutNanos = unit.toNanos(timeout);
+        this.executor = Executors.newCachedThreadPool((Runnable task) -> {
+            Thread thread = new Thread(task, "jsoncurrency-hedge");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public String getName() {
+        return "aggregate";
+    }
+
+    /**
+     * Get the aggregated sources
+     *
+     * @return sources in configured order
+     */
+    public List<RateSource> getSources() {
+        if (sources == null) {
+            synchronized (this) {
+                if (sources == null) {
+                    List<RateSource> named = new ArrayList<>();
+                    for (String name : sourceNames.split(",")) {
+                        if (!name.trim().isEmpty()) {
+                            named.add(RateSource.forName(name.trim()));
+                        }
+                    }
+                    if (named.isEmpty()) {
+                        throw new IllegalArgumentException("No rate sources named in \"" + sourceNames + "\"");
+                    }
+                    setSources(named);
+                }
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * Get the latency histogram of an aggregated source
+     *
+     * @param source one of getSources()
+     * @return latency histogram, or null if the source is not aggregated here
+     */
+    public LatencyHistogram getLatencyHistogram(RateSource source) {
+        getSources();
+        return histograms.get(source);
+    }
+
+    /**
+     * Get the sources in the order the next fetch queries them
+     *
+     * @return sources ranked by median latency and failure ratio
+     */
+    public List<RateSource> getRanking() {
+        List<RateSource> ranking = new ArrayList<>(getSources());
+        final Map<RateSource, Double> scores = new IdentityHashMap<>();
+        for (RateSource source : ranking) {
+            scores.put(source, scoreOf(histograms.get(source)));
+        }
+        // Stable, so sources with equal scores keep the configured order
+        ranking.sort((RateSource a, RateSource b) -> Double.compare(scores.get(a), scores.get(b)));
+        return ranking;
+    }
+
+    @Override
+    public List<Currency> fetch(final String baseCurrencyCode) throws Exception {
+        List<RateSource> ranking = getRanking();
+        CompletionService<List<Currency>> completion = new ExecutorCompletionService<>(executor);
+        Map<Future<List<Currency>>, RateSource> running = new IdentityHashMap<>();
+        AtomicBoolean decided = new AtomicBoolean();
+        long deadline = System.nanoTime() + timeoutNanos;
+        Exception failure = null;
+        int next = 0;
+
+        try {
+            running.put(submit(completion, ranking.get(next), baseCurrencyCode, decided), ranking.get(next++));
+            while (!running.isEmpty()) {
+                long remaining = deadline - System.nanoTime();
+                long wait = (next < ranking.size()) ? Math.min(remaining, hedgeDelayOf(ranking.get(next - 1))) : remaining;
+                Future<List<Currency>> done = (wait > 0) ? completion.poll(wait, TimeUnit.NANOSECONDS) : null;
+
+                if (done == null) {
+                    if (deadline - System.nanoTime() <= 0) {
+                        break;
+                    }
+                    // The latest source is slower than usual, hedge with the next one
+                    running.put(submit(completion, ranking.get(next), baseCurrencyCode, decided), ranking.get(next++));
+                    continue;
+                }
+
+                RateSource source = running.remove(done);
+                try {
+                    List<Currency> currencies = done.get();
+                    if (currencies != null && !currencies.isEmpty()) {
+                        return currencies;
+                    }
+                    failure = addFailure(failure, new IOException("Rate source " + source.getName() + " gave no " + baseCurrencyCode.toUpperCase() + " exchange table"));
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    failure = addFailure(failure, (cause instanceof Exception) ? (Exception) cause : e);
+                }
+                if (next < ranking.size()) {
+                    // Fail over right away
+                    running.put(submit(completion, ranking.get(next), baseCurrencyCode, decided), ranking.get(next++));
+                }
+            }
+        } finally {
+            decided.set(true);
+            for (Future<List<Currency>> losing : running.keySet()) {
+                losing.cancel(true);
+            }
+        }
+
+        if (!running.isEmpty()) {
+            SocketTimeoutException timeout = new SocketTimeoutException("No rate source answered " + baseCurrencyCode.toUpperCase()
+                    + " within " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + "ms");
+            if (failure != null) {
+                timeout.addSuppressed(failure);
+            }
+            throw timeout;
+        }
+        throw failure;
+    }
+
+    /**
+     * Query a source, recording its latency or failure. A source cancelled
+     * because the fetch was already decided did not fail, the time it took
+     * until then is recorded as its latency instead (a lower bound), so slow
+     * sources keep their rank below faster ones.
+     */
+    private Future<List<Currency>> submit(CompletionService<List<Currency>> completion, final RateSource source, final String baseCurrencyCode, final AtomicBoolean decided) {
+        final LatencyHistogram histogram = histograms.get(source);
+        return completion.submit(() -> {
+            long start = System.nanoTime();
+            try {
+                List<Currency> currencies = source.fetch(baseCurrencyCode);
+                histogram.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                return currencies;
+            } catch (Exception e) {
+                if (decided.get()) {
+                    histogram.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                } else {
+                    histogram.recordFailure();
+                }
+                throw e;
+            }
+        });
+    }
+
+    private long hedgeDelayOf(RateSource source) {
+        LatencyHistogram histogram = histograms.get(source);
+        if (histogram.getCount() < MIN_SAMPLES) {
+            return defaultHedgeDelayNanos;
+        }
+        return Math.max(1, histogram.getPercentile(hedgePercentile, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Median latency in milliseconds times (1 + 4 x failure ratio), the
+     * default hedge delay for sources with too few samples, and the worst
+     * score for sources which never answered
+     */
+    private double scoreOf(LatencyHistogram histogram) {
+        long answered = histogram.getCount(), failed = histogram.getFailureCount();
+        if (answered + failed < MIN_SAMPLES) {
+            return TimeUnit.NANOSECONDS.toMicros(defaultHedgeDelayNanos) / 1000.0;
+        } else if (answered == 0) {
+            return Double.MAX_VALUE;
+        }
+        double failureRatio = (double) failed / (answered + failed);
+        return histogram.getPercentile(50, TimeUnit.MICROSECONDS) / 1000.0 * (1 + 4 * failureRatio);
+    }
+
+    private void setSources(List<? extends RateSource> sources) {
+        Map<RateSource, LatencyHistogram> created = new IdentityHashMap<>();
+        for (RateSource source : sources) {
+            created.put(source, new LatencyHistogram());
+        }
+        histograms = created;
+        this.sources = Collections.unmodifiableList(new ArrayList<>(sources));
+    }
+
+    private static Exception addFailure(Exception failure, Exception next) {
+        if (failure == null) {
+            return next;
+        }
+        failure.addSuppressed(next);
+        return failure;
+    }
+}
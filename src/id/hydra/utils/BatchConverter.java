@@ -0,0 +1,205 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Convert whole price lists from one source currency into several target
+ * currencies at once, writing into caller-supplied arrays. Every target is a
+ * plain loop over the amounts with the pair rate looked up once, which the JIT
+ * unrolls and vectorizes for double amounts. Large batches are split over a
+ * fork-join pool by ranges of amounts.
+ * <br> Example: <code>new BatchConverter().convert(table, usdId, new int[]{eurId, idrId}, prices, new double[2][prices.length])</code>
+ *
+ * @author ShinyDove
+ */
+public class BatchConverter {
+
+    /**
+     * Count of conversions (amounts times targets) from which a batch is split
+     * over the fork-join pool by default
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 1 << 20;
+
+    /**
+     * The smallest range of amounts converted by a single fork-join task
+     */
+    private static final int MIN_SPLIT_SIZE = 1 << 13;
+
+    /**
+     * Convert the amounts of [start, end) into every target
+     */
+    private interface RangeConversion {
+
+        void convert(int start, int end);
+    }
+
+    private final ForkJoinPool pool;
+    private final long parallelThreshold;
+
+    /**
+     * Create a batch converter using the common fork-join pool for batches of
+     * at least DEFAULT_PARALLEL_THRESHOLD conversions
+     */
+    public BatchConverter() {
+        this(ForkJoinPool.commonPool(), DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Create a batch converter
+     *
+     * @param pool the fork-join pool to split large batches over
+     * @param parallelThreshold count of conversions (amounts times targets)
+     * from which a batch is split, or Long.MAX_VALUE to always convert on the
+     * calling thread
+     */
+    public BatchConverter(ForkJoinPool pool, long parallelThreshold) {
+        if (pool == null || parallelThreshold <= 0) {
+            throw new IllegalArgumentException("A pool and a positive threshold are required");
+        }
+        this.pool = pool;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Convert amounts from one currency into several currencies, the same as
+     * amount * table.rate(from, to) for every amount and target. Currencies
+     * not in the table give NaN results.
+     *
+     * @param table the rate table to convert with
+     * @param from source currency id
+     * @param to target currency ids
+     * @param amounts amounts in source currency
+     * @param results one array per target (at least as long as amounts)
+     * receiving the amounts in that target currency
+     */
+    public void convert(final RateTable table, final int from, final int[] to, final double[] amounts, final double[][] results) {
+        checkTargets(to.length, results.length);
+        final double[] rates = new double[to.length];
+        for (int t = 0; t < to.length; t++) {
+            checkSize(results[t].length, amounts.length);
+            rates[t] = table.rate(from, to[t]);
+        }
+
+        run(amounts.length, to.length, (int start, int end) -> {
+            for (int t = 0; t < rates.length; t++) {
+                multiply(amounts, rates[t], results[t], start, end);
+            }
+        });
+    }
+
+    /**
+     * Convert amounts in minor units from one currency into several
+     * currencies, the same as rates.convert(from, to, amount) for every amount
+     * and target
+     *
+     * @param rates the exact rates to convert with
+     * @param from source currency id
+     * @param to target currency ids
+     * @param amounts amounts in minor units of source currency
+     * @param results one array per target (at least as long as amounts)
+     * receiving the amounts in minor units of that target currency
+     * @throws IllegalArgumentException if a currency is not in the rates
+     * @throws ArithmeticException if a result does not fit in a long, or if
+     * rounding is needed with RoundingMode.UNNECESSARY
+     */
+    public void convert(final FixedPointRates rates, final int from, final int[] to, final long[] amounts, final long[][] results) {
+        checkTargets(to.length, results.length);
+        for (int t = 0; t < to.length; t++) {
+            checkSize(results[t].length, amounts.length);
+            rates.getScaledRate(from, to[t]); // fail before converting anything
+        }
+
+        run(amounts.length, to.length, (int start, int end) -> {
+            for (int t = 0; t < to.length; t++) {
+                rates.convertAll(from, to[t], amounts, results[t], start, end);
+            }
+        });
+    }
+
+    /**
+     * Multiply a range of amounts by a rate. Kept as a simple counted loop
+     * over arrays so the JIT vectorizes it.
+     *
+     * @param amounts amounts in source currency
+     * @param rate the exchange rate
+     * @param results receives the converted amounts at the same indexes
+     * @param start first index to convert
+     * @param end index after the last one to convert
+     */
+    public static void multiply(double[] amounts, double rate, double[] results, int start, int end) {
+        for (int i = start; i < end; i++) {
+            results[i] = amounts[i] * rate;
+        }
+    }
+
+    private void run(int size, int targets, RangeConversion conversion) {
+        Metrics metrics = CurrencyParser.getMetrics();
+        if (metrics != null) {
+            // Once per batch, the conversion loops stay free of instrumentation
+            metrics.add("conversions", (long) size * targets);
+        }
+        if (size < 2 * MIN_SPLIT_SIZE || (long) size * targets < parallelThreshold) {
+            conversion.convert(0, size);
+            return;
+        }
+        // A few tasks per worker so that uneven workers can steal the rest
+        int splitSize = Math.max(MIN_SPLIT_SIZE, size / (pool.getParallelism() * 4));
+        pool.invoke(new RangeTask(conversion, 0, size, splitSize));
+    }
+
+    private static void checkTargets(int targets, int resultCount) {
+        if (resultCount != targets) {
+            throw new IllegalArgumentException("Expected " + targets + " result arrays but got " + resultCount);
+        }
+    }
+
+    private static void checkSize(int resultSize, int size) {
+        if (resultSize < size) {
+            throw new IllegalArgumentException("Result array holds " + resultSize + " amounts but " + size + " are converted");
+        }
+    }
+
+    /**
+     * Halve a range of amounts until it is small enough to convert directly
+     */
+    private static final class RangeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient RangeConversion conversion;
+        private final int start, end, splitSize;
+
+        RangeTask(RangeConversion conversion, int start, int end, int splitSize) {
+            this.conversion = conversion;
+            this.start = start;
+            this.end = end;
+            this.splitSize = splitSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= splitSize) {
+                conversion.convert(start, end);
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            invokeAll(new RangeTask(conversion, start, middle, splitSize), new RangeTask(conversion, middle, end, splitSize));
+        }
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Immutable currency exchange table of one base currency stored as columns:
+ * target currency ids (CurrencyCode), name ids (CurrencyNames), two rate
+ * arrays and the publish dates, about 30 bytes per entry instead of a Currency
+ * object with Strings of its own. Codes and names are shared by every table through the two
+ * registries. Currency objects are only created when asked for, as views
+ * over the shared Strings.
+ * <br> Example: <code>new ColumnarCurrencyTable("usd", CurrencyParser.getCurrencyExchangeLists("usd")).getRate("idr")</code>
+ *
+ * @author ShinyDove
+ */
+public final class ColumnarCurrencyTable {
+
+    private final String baseCurrencyCode;
+    private final short[] targetIds;
+    private final int[] nameIds;
+    private final double[] rates, inverseRates;
+    private final long[] publishedAt;
+
+    /**
+     * Create a columnar table from a base currency exchange table. Entries
+     * whose code is not three letters are left out of the columns, see
+     * CurrencyCode.isValid().
+     *
+     * @param baseCurrencyCode the base (local) currency code of the table
+     * @param baseTable Currency exchange list of the base currency
+     * @throws IllegalArgumentException if the base code is not three letters
+     */
+    public ColumnarCurrencyTable(String baseCurrencyCode, List<Currency> baseTable) {
+        this.baseCurrencyCode = CurrencyCode.codeOf(CurrencyCode.register(baseCurrencyCode));
+        int size = 0;
+        for (Currency curr : baseTable) {
+            if (CurrencyCode.isValid(curr.getTargetCurrencyCode())) {
+                size++;
+            }
+        }
+        targetIds = new short[size];
+        nameIds = new int[size];
+        rates = new double[size];
+        inverseRates = new double[size];
+        publishedAt = new long[size];
+        int i = 0;
+        for (Currency curr : baseTable) {
+            if (!CurrencyCode.isValid(curr.getTargetCurrencyCode())) {
+                continue;
+            }
+            // CurrencyCode ids stay below Short.MAX_VALUE
+            targetIds[i] = (short) CurrencyCode.register(curr.getTargetCurrencyCode());
+            nameIds[i] = CurrencyNames.register(curr.getTargetCurrencyExchangeName());
+            rates[i] = curr.getExchangeRate();
+            inverseRates[i] = curr.getReverseExchangeRate();
+            publishedAt[i] = curr.getPublishedAt();
+            i++;
+        }
+    }
+
+    /**
+     * Get the base currency code
+     *
+     * @return upper case base currency code
+     */
+    public String getBaseCurrencyCode() {
+        return baseCurrencyCode;
+    }
+
+    /**
+     * Get the count of currencies
+     *
+     * @return currency count
+     */
+    public int size() {
+        return targetIds.length;
+    }
+
+    /**
+     * Get the position of a target currency
+     *
+     * @param targetCurrencyCode the target currency code (any case)
+     * @return position in feed order, -1 if it is not in the table
+     */
+    public int indexOf(CharSequence targetCurrencyCode) {
+        int id = CurrencyCode.idOf(targetCurrencyCode);
+        if (id >= 0) {
+            for (int i = 0; i < targetIds.length; i++) {
+                if (targetIds[i] == id) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the target currency id of a position
+     *
+     * @param index the position in feed order
+     * @return CurrencyCode id of the target currency
+     */
+    public int getTargetCurrencyId(int index) {
+        return targetIds[index];
+    }
+
+    /**
+     * Get the target currency code of a position
+     *
+     * @param index the position in feed order
+     * @return upper case target currency code
+     */
+    public String getTargetCurrencyCode(int index) {
+        return CurrencyCode.codeOf(targetIds[index]);
+    }
+
+    /**
+     * Get the target currency name of a position
+     *
+     * @param index the position in feed order
+     * @return target currency name
+     */
+    public String getTargetCurrencyName(int index) {
+        return CurrencyNames.nameOf(nameIds[index]);
+    }
+
+    /**
+     * Get the exchange rate of a position
+     *
+     * @param index the position in feed order
+     * @return units of target currency for one unit of base currency
+     */
+    public double getRate(int index) {
+        return rates[index];
+    }
+
+    /**
+     * Get the inverse exchange rate of a position
+     *
+     * @param index the position in feed order
+     * @return units of base currency for one unit of target currency
+     */
+    public double getInverseRate(int index) {
+        return inverseRates[index];
+    }
+
+    /**
+     * Get the time the rate of a position was published
+     *
+     * @param index the position in feed order
+     * @return publish time in milliseconds since the epoch, 0 if unknown
+     */
+    public long getPublishedAt(int index) {
+        return publishedAt[index];
+    }
+
+    /**
+     * Get the exchange rate of a target currency
+     *
+     * @param targetCurrencyCode the target currency code (any case)
+     * @return units of target currency for one unit of base currency, NaN if
+     * it is not in the table
+     */
+    public double getRate(CharSequence targetCurrencyCode) {
+        int index = indexOf(targetCurrencyCode);
+        return (index >= 0) ? rates[index] : Double.NaN;
+    }
+
+    /**
+     * Create the Currency of a position
+     *
+     * @param index the position in feed order
+     * @return a new Currency sharing the interned code and name
+     */
+    public Currency get(int index) {
+        return new Currency(getTargetCurrencyName(index), baseCurrencyCode, getTargetCurrencyCode(index), rates[index], inverseRates[index], publishedAt[index]);
+    }
+
+    /**
+     * Create the Currency of a target currency
+     *
+     * @param targetCurrencyCode the target currency code (any case)
+     * @return a new Currency, or null if it is not in the table
+     */
+    public Currency find(CharSequence targetCurrencyCode) {
+        int index = indexOf(targetCurrencyCode);
+        return (index >= 0) ? get(index) : null;
+    }
+
+    /**
+     * Get the table as a list creating a Currency on every get()
+     *
+     * @return unmodifiable list view in feed order
+     */
+    public List<Currency> asList() {
+        return new CurrencyView();
+    }
+
+    /**
+     * List of lazily created Currency objects
+     */
+    private final class CurrencyView extends AbstractList<Currency> implements RandomAccess {
+
+        @Override
+        public Currency get(int index) {
+            return ColumnarCurrencyTable.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return targetIds.length;
+        }
+    }
+}
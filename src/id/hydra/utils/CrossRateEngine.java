@@ -0,0 +1,203 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Cross rate engine which derives the exchange rate of any currency pair from
+ * a single base currency exchange table by triangulating through the base.
+ * Every pair is precomputed into a dense N x N matrix indexed by currency
+ * ordinal, so a conversion is an array read without querying the web.
+ * <br> Example: <code>CrossRateEngine.load("usd").convert("EUR", "IDR", 25)</code>
+ *
+ * @author ShinyDove
+ */
+public class CrossRateEngine {
+
+    private final String baseCurrencyCode;
+    private final String[] codes, names;
+    private final HashMap<String, Integer> ordinals;
+    private final double[] rates;
+    private final int size;
+
+    /**
+     * Create a cross rate engine from a base currency exchange table
+     *
+     * @param baseCurrencyCode the base (local) currency code of the table
+     * @param baseTable Currency exchange list of the base currency
+     */
+    public CrossRateEngine(String baseCurrencyCode, List<Currency> baseTable) {
+        this.baseCurrencyCode = baseCurrencyCode.toUpperCase();
+
+        // Ordinal 0 is the base currency itself
+        int capacity = baseTable.size() + 1;
+        String[] codeList = new String[capacity], nameList = new String[capacity];
+        double[] perBase = new double[capacity], basePer = new double[capacity];
+        ordinals = new HashMap<>(capacity * 2);
+        codeList[0] = this.baseCurrencyCode;
+        nameList[0] = displayName(this.baseCurrencyCode);
+        perBase[0] = basePer[0] = 1.0;
+        ordinals.put(this.baseCurrencyCode, 0);
+
+        int n = 1;
+        for (Currency curr : baseTable) {
+            String code = curr.getTargetCurrencyCode().toUpperCase();
+            if (ordinals.containsKey(code)) {
+                continue;
+            }
+            ordinals.put(code, n);
+            codeList[n] = code;
+            nameList[n] = curr.getTargetCurrencyExchangeName();
+            perBase[n] = curr.getCurrencyExchangeRate(false);
+            basePer[n] = curr.getCurrencyExchangeRate(true);
+            n++;
+        }
+        size = n;
+        codes = (n == capacity) ? codeList : Arrays.copyOf(codeList, n);
+        names = (n == capacity) ? nameList : Arrays.copyOf(nameList, n);
+
+        // from -> to = (base per from) * (to per base)
+        rates = new double[n * n];
+        for (int from = 0; from < n; from++) {
+            int row = from * n;
+            for (int to = 0; to < n; to++) {
+                rates[row + to] = (from == to) ? 1.0 : basePer[from] * perBase[to];
+            }
+        }
+    }
+
+    /**
+     * Load a cross rate engine from the currency exchange table of a base
+     * currency queried via CurrencyParser
+     *
+     * @param baseCurrencyCode the base currency code, e.g. "usd"
+     * @return cross rate engine for every currency in the base table
+     * @throws Exception if any parse failure occurred
+     */
+    public static CrossRateEngine load(String baseCurrencyCode) throws Exception {
+        return new CrossRateEngine(baseCurrencyCode, CurrencyParser.getCurrencyExchangeLists(baseCurrencyCode));
+    }
+
+    /**
+     * Get the base currency code the rates are triangulated through
+     *
+     * @return base currency code (upper case)
+     */
+    public String getBaseCurrencyCode() {
+        return baseCurrencyCode;
+    }
+
+    /**
+     * Get the count of currencies known by the engine, including the base
+     *
+     * @return count of currencies
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the ordinal of a currency code
+     *
+     * @param currencyCode the currency code (any case)
+     * @return the ordinal, or -1 if the currency is unknown
+     */
+    public int ordinalOf(String currencyCode) {
+        Integer ordinal = ordinals.get(currencyCode.toUpperCase());
+        return (ordinal == null) ? -1 : ordinal;
+    }
+
+    /**
+     * Get the currency code of an ordinal
+     *
+     * @param ordinal the currency ordinal
+     * @return currency code (upper case)
+     */
+    public String codeOf(int ordinal) {
+        return codes[ordinal];
+    }
+
+    /**
+     * Get the exchange rate between two currency ordinals
+     *
+     * @param from source currency ordinal
+     * @param to target currency ordinal
+     * @return units of target currency for one unit of source currency
+     */
+    public double getRate(int from, int to) {
+        return rates[from * size + to];
+    }
+
+    /**
+     * Convert an amount between two currency ordinals
+     *
+     * @param from source currency ordinal
+     * @param to target currency ordinal
+     * @param amount amount in source currency
+     * @return amount in target currency
+     */
+    public double convert(int from, int to, double amount) {
+        return amount * rates[from * size + to];
+    }
+
+    /**
+     * Convert an amount between two currency codes
+     *
+     * @param sourceCurrencyCode source currency code
+     * @param targetCurrencyCode target currency code
+     * @param amount amount in source currency
+     * @return amount in target currency
+     */
+    public double convert(String sourceCurrencyCode, String targetCurrencyCode, double amount) {
+        return convert(requireOrdinal(sourceCurrencyCode), requireOrdinal(targetCurrencyCode), amount);
+    }
+
+    /**
+     * Get the cross rate between two currencies as a Currency, the same way
+     * CurrencyParser.getBetweenCurrencyExchangeRate() does for direct quotes
+     *
+     * @param sourceCurrencyCode source currency code
+     * @param targetCurrencyCode target currency code
+     * @return currency exchange rate between source currency and target currency
+     */
+    public Currency getCrossRate(String sourceCurrencyCode, String targetCurrencyCode) {
+        int from = requireOrdinal(sourceCurrencyCode), to = requireOrdinal(targetCurrencyCode);
+        return new Currency(names[to], codes[from], codes[to], getRate(from, to), getRate(to, from));
+    }
+
+    private int requireOrdinal(String currencyCode) {
+        int ordinal = ordinalOf(currencyCode);
+        if (ordinal < 0) {
+            throw new IllegalArgumentException("Currency " + currencyCode.toUpperCase() + " is not in the " + baseCurrencyCode + " table");
+        }
+        return ordinal;
+    }
+
+    /**
+     * The base table does not list the base currency itself, so fall back to
+     * the JDK currency name
+     */
+    private static String displayName(String currencyCode) {
+        try {
+            return java.util.Currency.getInstance(currencyCode).getDisplayName();
+        } catch (IllegalArgumentException e) {
+            return currencyCode;
+        }
+    }
+}
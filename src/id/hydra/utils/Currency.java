@@ -10,6 +10,7 @@ public class Currency {
     
     private final String targetCurrencyName, localCurrencyCode, targetCurrencyCode;
     private final double exchangeRate, reverseExchangeRate;
+    private final long publishedAt;
     
     /**
      * Create Currency Conversion object with set of name of currency, 
@@ -20,11 +21,25 @@ public class Currency {
      * @param reverseExchangeRate The destination currency to local currency rate
      */
     public Currency(String targetCurrencyName, String localCurrencyCode, String targetCurrencyCode, double exchangeRate, double reverseExchangeRate){
+        this(targetCurrencyName, localCurrencyCode, targetCurrencyCode, exchangeRate, reverseExchangeRate, 0);
+    }
+    
+    /**
+     * Create Currency Conversion object with the time the rate was published
+     * @param targetCurrencyName The target currency name
+     * @param localCurrencyCode The local currency name
+     * @param targetCurrencyCode The destination currency code
+     * @param exchangeRate The local currency to destination currency rate
+     * @param reverseExchangeRate The destination currency to local currency rate
+     * @param publishedAt The epoch milliseconds the rate was published at, 0 if unknown
+     */
+    public Currency(String targetCurrencyName, String localCurrencyCode, String targetCurrencyCode, double exchangeRate, double reverseExchangeRate, long publishedAt){
         this.targetCurrencyName = targetCurrencyName;
         this.localCurrencyCode = localCurrencyCode;
         this.targetCurrencyCode = targetCurrencyCode;
         this.exchangeRate = exchangeRate;
         this.reverseExchangeRate = reverseExchangeRate;
+        this.publishedAt = publishedAt;
     }
     
     /**
@@ -78,6 +93,30 @@ public class Currency {
         return (reverse == true) ? reverseExchangeRate : exchangeRate;
     }
     
+    /**
+     * Get local currency to target currency rate without boxing
+     * @return units of target currency for one unit of local currency
+     */
+    public double getExchangeRate(){
+        return exchangeRate;
+    }
+    
+    /**
+     * Get target currency to local currency rate without boxing
+     * @return units of local currency for one unit of target currency
+     */
+    public double getReverseExchangeRate(){
+        return reverseExchangeRate;
+    }
+    
+    /**
+     * Get the time the rate was published by the feed ("date" of the entry)
+     * @return epoch milliseconds, or 0 if unknown
+     */
+    public long getPublishedAt(){
+        return publishedAt;
+    }
+    
     /**
      * Sort by currency name, ascending
      */
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Registry of interned ISO 4217 currency codes mapped to small int ids. Every
+ * currency known to the JDK is registered up front in code order, others are
+ * registered on first use. Lookups are case-insensitive and allocation-free,
+ * so hot paths can work on ids instead of String codes.
+ * <br> Example: <code>int idr = CurrencyCode.idOf("idr")</code>
+ *
+ * @author ShinyDove
+ */
+public final class CurrencyCode {
+
+    /**
+     * Returned by idOf() for codes which are not registered
+     */
+    public static final int UNKNOWN = -1;
+
+    /**
+     * Three letter codes packed as base-26 number mapped to id + 1 (0 is unknown)
+     */
+    private static final short[] PACKED_IDS = new short[26 * 26 * 26];
+
+    private static volatile String[] codes = new String[512];
+    private static volatile int count;
+
+    static {
+        List<String> isoCodes = new ArrayList<>();
+        for (java.util.Currency currency : java.util.Currency.getAvailableCurrencies()) {
+            isoCodes.add(currency.getCurrencyCode());
+        }
+        Collections.sort(isoCodes);
+        for (String code : isoCodes) {
+            register(code);
+        }
+    }
+
+    private CurrencyCode() {
+    }
+
+    /**
+     * Register a currency code, or get its id if it is already registered
+     *
+     * @param currencyCode three letter currency code (any case)
+     * @return the id of the currency code
+     * @throws IllegalArgumentException if the code is not three ASCII letters
+     */
+    public static synchronized int register(CharSequence currencyCode) {
+        int packed = pack(currencyCode);
+        if (packed < 0) {
+            throw new IllegalArgumentException("Currency code must be three letters: " + currencyCode);
+        }
+        int id = PACKED_IDS[packed] - 1;
+        if (id >= 0) {
+            return id;
+        }
+
+        id = count;
+        if (id == Short.MAX_VALUE) {
+            throw new IllegalStateException("Too many currency codes registered");
+        }
+        String[] table = codes;
+        if (id == table.length) {
+            table = Arrays.copyOf(table, table.length * 2);
+        }
+        table[id] = currencyCode.toString().toUpperCase().intern();
+        codes = table;
+        // Publish the code before its id, idOf() reads PACKED_IDS without the lock
+        count = id + 1;
+        PACKED_IDS[packed] = (short) (id + 1);
+        return id;
+    }
+
+    /**
+     * Check whether a currency code can be registered
+     *
+     * @param currencyCode currency code (any case)
+     * @return true if the code is three ASCII letters
+     */
+    public static boolean isValid(CharSequence currencyCode) {
+        return pack(currencyCode) >= 0;
+    }
+
+    /**
+     * Get the id of a currency code without allocating
+     *
+     * @param currencyCode three letter currency code (any case)
+     * @return the id of the currency code, or UNKNOWN if it is not registered
+     */
+    public static int idOf(CharSequence currencyCode) {
+        int packed = pack(currencyCode);
+        if (packed < 0) {
+            return UNKNOWN;
+        }
+        // An id seen before count is not published yet, so codeOf() could not answer it
+        int id = PACKED_IDS[packed] - 1;
+        return (id < count) ? id : UNKNOWN;
+    }
+
+    /**
+     * Get the interned upper case currency code of an id
+     *
+     * @param id the currency id
+     * @return the currency code (upper case)
+     */
+    public static String codeOf(int id) {
+        if (id < 0 || id >= count) {
+            throw new IllegalArgumentException("Unknown currency id " + id);
+        }
+        return codes[id];
+    }
+
+    /**
+     * Get the count of registered currency codes, ids range from 0 to size() - 1
+     *
+     * @return count of registered currency codes
+     */
+    public static int size() {
+        return count;
+    }
+
+    private static int pack(CharSequence currencyCode) {
+        if (currencyCode.length() != 3) {
+            return -1;
+        }
+        int packed = 0;
+        for (int i = 0; i < 3; i++) {
+            int letter = currencyCode.charAt(i) | 0x20; // lower case
+            if (letter < 'a' || letter > 'z') {
+                return -1;
+            }
+            packed = packed * 26 + (letter - 'a');
+        }
+        return packed;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Registry of interned currency names mapped to int ids, the name counterpart
+ * of CurrencyCode. Every base table repeats the same names, so tables can keep
+ * a name id per entry instead of a String of their own.
+ * <br> Example: <code>String name = CurrencyNames.nameOf(CurrencyNames.register("Indonesian Rupiah"))</code>
+ *
+ * @author ShinyDove
+ */
+public final class CurrencyNames {
+
+    private static final HashMap<String, Integer> IDS = new HashMap<>();
+    private static volatile String[] names = new String[512];
+    private static volatile int count;
+
+    private CurrencyNames() {
+    }
+
+    /**
+     * Register a currency name, or get its id if it is already registered
+     *
+     * @param name the currency name (case-sensitive)
+     * @return the id of the name
+     */
+    public static synchronized int register(String name) {
+        Integer id = IDS.get(name);
+        if (id != null) {
+            return id;
+        }
+
+        int next = count;
+        String[] table = names;
+        if (next == table.length) {
+            table = Arrays.copyOf(table, table.length * 2);
+        }
+        table[next] = name.intern();
+        names = table;
+        IDS.put(table[next], next);
+        count = next + 1;
+        return next;
+    }
+
+    /**
+     * Get the interned currency name of an id
+     *
+     * @param id the name id
+     * @return the currency name
+     */
+    public static String nameOf(int id) {
+        if (id < 0 || id >= count) {
+            throw new IllegalArgumentException("Unknown currency name id " + id);
+        }
+        return names[id];
+    }
+
+    /**
+     * Get the count of registered names, ids range from 0 to size() - 1
+     *
+     * @return count of registered names
+     */
+    public static int size() {
+        return count;
+    }
+}
@@ -15,11 +15,15 @@
  */
 package id.hydra.utils;
 
-import java.net.*;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.json.*;
+import javax.management.JMException;
 
 /**
  * Parse and query currency information provided from web
@@ -34,6 +38,314 @@ public class CurrencyParser {
      */
     public static final String CURRENCY_EXCHANGE_JSON_ADDRESS = "http://www.floatrates.com/daily/####.json";
 
+    /**
+     * The optional cache of currency exchange lists, null if every call should
+     * query the web
+     */
+    private static volatile RateCache rateCache;
+
+    /**
+     * The HTTP fetcher used to query the web
+     */
+    private static volatile FeedFetcher feedFetcher = new FeedFetcher();
+
+    /**
+     * The source every currency exchange list is fetched from
+     */
+    private static volatile RateSource rateSource = new FloatratesRateSource();
+
+    /**
+     * The optional on-disk snapshot serving the first call of every base
+     * while it is refreshed in the background
+     */
+    private static volatile SnapshotStore snapshotStore;
+    private static final Set<String> servedFromSnapshot = ConcurrentHashMap.newKeySet();
+    private static final ExecutorService snapshotRefresher = new ThreadPoolExecutor(0, 1, 1, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(), (Runnable task) -> new Thread(task, "jsoncurrency-snapshot-refresh"));
+
+    /**
+     * The optional history every table fetched from the web is recorded into
+     */
+    private static volatile RateHistory rateHistory;
+
+    /**
+     * The optional archive every raw feed fetched from floatrates is stored
+     * into, null if feeds should not be archived
+     */
+    private static volatile FeedArchive feedArchive;
+
+    /**
+     * The optional differ every table fetched from the web is compared with
+     * the previous one by, publishing the rate changes to its listeners
+     */
+    private static volatile RateDiffer rateDiffer;
+
+    /**
+     * The optional scheduler keeping the tables of some bases warm, served
+     * before the snapshot and the cache
+     */
+    private static volatile RefreshScheduler refreshScheduler;
+
+    /**
+     * The optional router every table fetched from the web is added to, for
+     * routes through more than one table
+     */
+    private static volatile RateRouter rateRouter;
+
+    /**
+     * The latest tables of every base fetched from the web, swapped as a whole
+     */
+    private static final AtomicReference<RateSnapshot> rateSnapshot = new AtomicReference<>(RateSnapshot.EMPTY);
+
+    /**
+     * The optional metrics of the fetch, parse and convert stages, null if
+     * nothing should be recorded
+     */
+    private static volatile Metrics metrics;
+
+    /**
+     * The output format of the exchange tables
+     */
+    private static volatile TableRenderer.Format tableFormat = TableRenderer.Format.TEXT;
+
+    /**
+     * Set the cache used by getCurrencyExchangeLists() and
+     * getBetweenCurrencyExchangeRate() to avoid querying the web on every call
+     *
+     * @param cache the rate cache to use, or null to disable caching
+     */
+    public static void setRateCache(RateCache cache) {
+        rateCache = cache;
+    }
+
+    /**
+     * Get the cache used to avoid querying the web on every call
+     *
+     * @return the rate cache in use, or null if caching is disabled
+     */
+    public static RateCache getRateCache() {
+        return rateCache;
+    }
+
+    /**
+     * Set the HTTP fetcher used to query the web, e.g. to change timeouts
+     *
+     * @param fetcher the feed fetcher to use
+     */
+    public static void setFeedFetcher(FeedFetcher fetcher) {
+        feedFetcher = Objects.requireNonNull(fetcher);
+    }
+
+    /**
+     * Get the HTTP fetcher used to query the web
+     *
+     * @return the feed fetcher in use
+     */
+    public static FeedFetcher getFeedFetcher() {
+        return feedFetcher;
+    }
+
+    /**
+     * Set the source currency exchange lists are fetched from, e.g. a local
+     * directory of feed files instead of the web
+     *
+     * @param source the rate source to use
+     */
+    public static void setRateSource(RateSource source) {
+        rateSource = Objects.requireNonNull(source);
+    }
+
+    /**
+     * Get the source currency exchange lists are fetched from
+     *
+     * @return the rate source in use, floatrates over HTTP by default
+     */
+    public static RateSource getRateSource() {
+        return rateSource;
+    }
+
+    /**
+     * Set the on-disk snapshot store and load it. The first call for a base
+     * currency found in the snapshot is answered from it right away while the
+     * base is refreshed from the web in the background, and every table
+     * fetched from the web is written back to the snapshot.
+     *
+     * @param store the snapshot store to use, or null to disable snapshots
+     * @throws IOException if the snapshot file exists but could not be read
+     */
+    public static void setSnapshotStore(SnapshotStore store) throws IOException {
+        if (store != null) {
+            store.load();
+        }
+        servedFromSnapshot.clear();
+        snapshotStore = store;
+    }
+
+    /**
+     * Get the on-disk snapshot store
+     *
+     * @return the snapshot store in use, or null if snapshots are disabled
+     */
+    public static SnapshotStore getSnapshotStore() {
+        return snapshotStore;
+    }
+
+    /**
+     * Set the rate history and load its segments. The rates of every table
+     * fetched from the web are recorded into it and flushed to its segment
+     * directory, if any, see RateHistory.flushLater().
+     *
+     * @param history the rate history to use, or null to disable recording
+     * @throws IOException if the segments exist but could not be read
+     */
+    public static void setRateHistory(RateHistory history) throws IOException {
+        if (history != null) {
+            history.load();
+        }
+        rateHistory = history;
+    }
+
+    /**
+     * Get the rate history
+     *
+     * @return the rate history in use, or null if recording is disabled
+     */
+    public static RateHistory getRateHistory() {
+        return rateHistory;
+    }
+
+    /**
+     * Set the feed archive and load its indexes. Every raw feed fetched from
+     * floatrates is appended to it as received.
+     *
+     * @param archive the feed archive to use, or null to disable archiving
+     * @throws IOException if the indexes exist but could not be read
+     */
+    public static void setFeedArchive(FeedArchive archive) throws IOException {
+        if (archive != null) {
+            archive.load();
+        }
+        feedArchive = archive;
+    }
+
+    /**
+     * Get the feed archive
+     *
+     * @return the feed archive in use, or null if archiving is disabled
+     */
+    public static FeedArchive getFeedArchive() {
+        return feedArchive;
+    }
+
+    /**
+     * Set the rate differ. Every table fetched from the web is compared with
+     * the rates published before, and the pairs which moved are published to
+     * the listeners of the differ.
+     *
+     * @param differ the rate differ to use, or null to disable diffing
+     */
+    public static void setRateDiffer(RateDiffer differ) {
+        rateDiffer = differ;
+    }
+
+    /**
+     * Get the rate differ
+     *
+     * @return the rate differ in use, or null if diffing is disabled
+     */
+    public static RateDiffer getRateDiffer() {
+        return rateDiffer;
+    }
+
+    /**
+     * Set the rate router. Every table fetched from the web updates the
+     * quotes of its base in the router.
+     *
+     * @param router the rate router to use, or null to disable routing
+     */
+    public static void setRateRouter(RateRouter router) {
+        rateRouter = router;
+    }
+
+    /**
+     * Get the rate router
+     *
+     * @return the rate router in use, or null if routing is disabled
+     */
+    public static RateRouter getRateRouter() {
+        return rateRouter;
+    }
+
+    /**
+     * Set the refresh scheduler. The bases it keeps warm are served from its
+     * last fetched table, however old, and never wait for the web.
+     *
+     * @param scheduler the refresh scheduler to use, or null to fetch on demand
+     */
+    public static void setRefreshScheduler(RefreshScheduler scheduler) {
+        refreshScheduler = scheduler;
+    }
+
+    /**
+     * Get the refresh scheduler
+     *
+     * @return the refresh scheduler in use, or null if bases are fetched on
+     * demand
+     */
+    public static RefreshScheduler getRefreshScheduler() {
+        return refreshScheduler;
+    }
+
+    /**
+     * Set the metrics the fetch, parse and convert stages are recorded into
+     *
+     * @param recorder the metrics to record into, or null to disable recording
+     */
+    public static void setMetrics(Metrics recorder) {
+        metrics = recorder;
+    }
+
+    /**
+     * Get the metrics the fetch, parse and convert stages are recorded into
+     *
+     * @return the metrics in use, or null if recording is disabled
+     */
+    public static Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Set the output format of the exchange tables displayed by the command
+     * line, e.g. CSV to pipe them into reports
+     *
+     * @param format the table format to use
+     */
+    public static void setTableFormat(TableRenderer.Format format) {
+        tableFormat = Objects.requireNonNull(format);
+    }
+
+    /**
+     * Get the output format of the exchange tables displayed by the command
+     * line
+     *
+     * @return the table format in use, text by default
+     */
+    public static TableRenderer.Format getTableFormat() {
+        return tableFormat;
+    }
+
+    /**
+     * Get the latest tables of every base currency fetched from the web so far.
+     * Each fetch publishes a new immutable snapshot, so the returned one can be
+     * read from any thread without locking and never changes; call this again
+     * to see later fetches.
+     *
+     * @return the current rate snapshot, RateSnapshot.EMPTY before any fetch
+     */
+    public static RateSnapshot getRateSnapshot() {
+        return rateSnapshot.get();
+    }
+
     /**
      * Locate the JSON Currency Exchange JSON Address.
      * <br>To override this method,
@@ -56,40 +368,194 @@ public class CurrencyParser {
      * @return Currency exchange list of foreign currency for local/source currency
      */
     public static ArrayList<Currency> getCurrencyExchangeLists(String sourceCurrencyCode) throws Exception {
-        // Query source currency conversion rate via floatrates
-        String s = locateJSONfile(sourceCurrencyCode);
-        URL url = new URL(s);
+        List<Currency> stored = takeFromMemory(sourceCurrencyCode);
+        if (stored != null) {
+            return new ArrayList<>(stored);
+        }
 
-        // Query from the upstreamed json files
-        Scanner scan = new Scanner(url.openStream());
-        String str = new String();
-        while (scan.hasNext()) {
-            str += scan.nextLine();
+        RateCache cache = rateCache;
+        if (cache != null) {
+            // Copy as callers are free to sort or modify the list
+            return new ArrayList<>(cache.get(sourceCurrencyCode, CurrencyParser::fetchCurrencyExchangeLists));
         }
-        scan.close();
+        return fetchCurrencyExchangeLists(sourceCurrencyCode);
+    }
 
-        // Define and iterates keys
-        JSONObject obj = new JSONObject(str);
-        Iterator<String> keys = obj.keys();
-        ArrayList<Currency> currLists = new ArrayList<>();
+    /**
+     * Get the currency exchange table of a currency indexed by currency code
+     * and pre-sorted. Tables fetched from the web are built once per fetch and
+     * shared through the rate snapshot.
+     *
+     * @param sourceCurrencyCode the source currency code
+     * @throws Exception if any parse failure occurred
+     * @return Currency table of foreign currency for local/source currency
+     */
+    public static CurrencyTable getCurrencyTable(String sourceCurrencyCode) throws Exception {
+        ArrayList<Currency> currLists = getCurrencyExchangeLists(sourceCurrencyCode);
+        CurrencyTable published = rateSnapshot.get().getCurrencyTable(sourceCurrencyCode);
+        if (published != null && published.hasSameEntries(currLists)) {
+            return published;
+        }
+        return new CurrencyTable(sourceCurrencyCode, currLists);
+    }
 
-        while (keys.hasNext()) {
-            // Iterate each keys
-            JSONObject currJSON = obj.getJSONObject(keys.next());
+    /**
+     * Query the currency exchange list of a currency from the rate source
+     *
+     * @param sourceCurrencyCode the source currency code
+     * @throws Exception if any parse failure occurred
+     * @return Currency exchange list of foreign currency for local/source currency
+     */
+    private static ArrayList<Currency> fetchCurrencyExchangeLists(String sourceCurrencyCode) throws Exception {
+        // Query source currency conversion rate via the rate source (floatrates by default)
+        ArrayList<Currency> currLists = new ArrayList<>(rateSource.fetch(sourceCurrencyCode));
+        onTableFetched(Collections.singletonMap(sourceCurrencyCode, currLists));
+        return currLists;
+    }
 
-            // Gather properties
-            String target_target_curr_name = currJSON.getString("name").replaceAll("\t", "").replaceAll("convertible ", "");
-            String target_curr_code = currJSON.getString("code");
-            Double curr_rate = currJSON.getDouble("rate");
-            Double curr_rrate = currJSON.getDouble("inverseRate");
-            String source_curr_code = sourceCurrencyCode.toUpperCase();
-            Currency curr = new Currency(target_target_curr_name, source_curr_code, target_curr_code, curr_rate, curr_rrate);
+    /**
+     * Fetch the currency exchange list of a currency for the refresh
+     * scheduler, storing it in the rate cache as well
+     *
+     * @param sourceCurrencyCode the source currency code
+     * @throws Exception if any fetch or parse failure occurred
+     * @return Currency exchange list of foreign currency for local/source currency
+     */
+    static ArrayList<Currency> refreshCurrencyExchangeLists(String sourceCurrencyCode) throws Exception {
+        ArrayList<Currency> currLists = fetchCurrencyExchangeLists(sourceCurrencyCode);
+        RateCache cache = rateCache;
+        if (cache != null) {
+            cache.put(sourceCurrencyCode, currLists);
+        }
+        return currLists;
+    }
 
-            currLists.add(curr);
+    /**
+     * Serve a base currency from the refresh scheduler if it keeps the base
+     * warm, or else from the snapshot, see takeFromSnapshot()
+     *
+     * @param sourceCurrencyCode the source currency code
+     * @return the table in memory, or null if the call should query as usual
+     */
+    private static List<Currency> takeFromMemory(String sourceCurrencyCode) {
+        RefreshScheduler scheduler = refreshScheduler;
+        List<Currency> warm = (scheduler != null) ? scheduler.getTable(sourceCurrencyCode) : null;
+        return (warm != null) ? warm : takeFromSnapshot(sourceCurrencyCode);
+    }
+
+    /**
+     * Serve the first call of a base currency from the snapshot, if any, and
+     * refresh that base in the background
+     *
+     * @param sourceCurrencyCode the source currency code
+     * @return the snapshot table, or null if the call should query as usual
+     */
+    private static List<Currency> takeFromSnapshot(final String sourceCurrencyCode) {
+        SnapshotStore store = snapshotStore;
+        final RateCache cache = rateCache;
+        if (store == null || (cache != null && cache.getIfPresent(sourceCurrencyCode) != null)
+                || !servedFromSnapshot.add(sourceCurrencyCode.toUpperCase())) {
+            return null;
+        }
+        List<Currency> stored = store.getTable(sourceCurrencyCode);
+        if (stored != null) {
+            snapshotRefresher.execute(() -> {
+                try {
+                    if (cache != null) {
+                        cache.get(sourceCurrencyCode, CurrencyParser::fetchCurrencyExchangeLists);
+                    } else {
+                        fetchCurrencyExchangeLists(sourceCurrencyCode);
+                    }
+                } catch (Exception e) {
+                    countError();
+                    Logger.getLogger(CurrencyParser.class.getName()).log(Level.WARNING, "Could not refresh " + sourceCurrencyCode.toUpperCase() + " exchange information", e);
+                }
+            });
         }
+        return stored;
+    }
 
-        scan.close();
-        return currLists;
+    /**
+     * Publish freshly fetched tables in the rate snapshot, and hand them to the
+     * snapshot store, the rate history, the rate differ and the rate router,
+     * if any
+     *
+     * @param currencyLists map of base currency code to its fetched currency exchange list
+     */
+    private static void onTableFetched(Map<String, ? extends List<Currency>> currencyLists) {
+        if (!currencyLists.isEmpty()) {
+            // Concurrent fetches of other bases are merged by retrying on the newer snapshot
+            rateSnapshot.updateAndGet((RateSnapshot current) -> current.withAll(currencyLists));
+        }
+
+        SnapshotStore store = snapshotStore;
+        if (store != null && !currencyLists.isEmpty()) {
+            try {
+                store.updateAll(currencyLists);
+            } catch (IOException e) {
+                countError();
+                Logger.getLogger(CurrencyParser.class.getName()).log(Level.WARNING, "Could not write currency snapshot " + store.getFile(), e);
+            }
+        }
+
+        RateHistory history = rateHistory;
+        if (history != null && !currencyLists.isEmpty()) {
+            history.recordAll(currencyLists, System.currentTimeMillis());
+            try {
+                history.flushLater();
+            } catch (IOException e) {
+                countError();
+                Logger.getLogger(CurrencyParser.class.getName()).log(Level.WARNING, "Could not write rate history " + history.getDirectory(), e);
+            }
+        }
+
+        RateDiffer differ = rateDiffer;
+        if (differ != null && !currencyLists.isEmpty()) {
+            differ.updateAll(currencyLists, System.currentTimeMillis());
+        }
+
+        RateRouter router = rateRouter;
+        if (router != null) {
+            router.updateAll(currencyLists);
+        }
+    }
+
+    /**
+     * Count a logged failure in the metrics, if any
+     */
+    private static void countError() {
+        Metrics recorder = metrics;
+        if (recorder != null) {
+            recorder.increment("errors");
+        }
+    }
+
+    /**
+     * Fetch the currency exchange lists of many base currencies concurrently
+     * (at most 16 at a time, 30 seconds per base). Bases which could not be
+     * fetched are logged and left out of the result. The fetched lists are
+     * also stored in the rate cache and the snapshot, if any.
+     *
+     * @param baseCodes base currency codes to fetch
+     * @return map of base currency code (upper case) to its currency exchange list
+     * @throws InterruptedException if interrupted while waiting for fetches
+     * @see MultiBaseFetcher for custom concurrency, timeout and failure reporting
+     */
+    public static Map<String, List<Currency>> fetchAll(Collection<String> baseCodes) throws InterruptedException {
+        MultiBaseFetcher.Result result = new MultiBaseFetcher(16, 30, TimeUnit.SECONDS).fetchAll(baseCodes);
+        for (Map.Entry<String, Exception> failure : result.getFailures().entrySet()) {
+            countError();
+            Logger.getLogger(CurrencyParser.class.getName()).log(Level.WARNING, "Could not fetch " + failure.getKey() + " exchange information", failure.getValue());
+        }
+
+        RateCache cache = rateCache;
+        if (cache != null) {
+            for (Map.Entry<String, List<Currency>> rates : result.getRates().entrySet()) {
+                cache.put(rates.getKey(), rates.getValue());
+            }
+        }
+        onTableFetched(result.getRates());
+        return result.getRates();
     }
 
     /**
@@ -97,45 +563,61 @@ public class CurrencyParser {
      *
      * @param sourceCurrencyCode source currency code
      * @param targetCurrencyCode destination currency code
+     * @throws UnknownCurrencyException if the table has no target currency
      * @throws Exception if any parse error occurred
      * @return currency exchange rate between source currency and target currency
      */
     public static Currency getBetweenCurrencyExchangeRate(String sourceCurrencyCode, String targetCurrencyCode) throws Exception {
-        // Query source currency conversion rate via floatrates
-        String s = locateJSONfile(sourceCurrencyCode);
-        URL url = new URL(s);
-
-        // Query from the upstreamed json files
-        Scanner scan = new Scanner(url.openStream());
-        String str = new String();
-        while (scan.hasNext()) {
-            str += scan.nextLine();
+        Metrics recorder = metrics;
+        if (recorder != null) {
+            recorder.increment("lookups");
+        }
+        RateCache cache = rateCache;
+        RateSource source = rateSource;
+        List<Currency> stored = takeFromMemory(sourceCurrencyCode);
+        if (stored != null || cache != null || !(source instanceof FloatratesRateSource)
+                || snapshotStore != null || rateHistory != null || feedArchive != null) {
+            // Use the whole table so the next pairs of the same source are served from memory
+            // (sources other than floatrates only give whole tables anyway, and the snapshot,
+            // the history and the archive store whole tables)
+            List<Currency> currLists = (stored != null) ? stored
+                    : (cache != null) ? cache.get(sourceCurrencyCode, CurrencyParser::fetchCurrencyExchangeLists)
+                    : fetchCurrencyExchangeLists(sourceCurrencyCode);
+            CurrencyTable published = rateSnapshot.get().getCurrencyTable(sourceCurrencyCode);
+            if (published != null && published.hasSameEntries(currLists)) {
+                // Indexed lookup instead of scanning the table
+                Currency curr = published.get(targetCurrencyCode);
+                if (curr != null) {
+                    return curr;
+                }
+            } else {
+                for (Currency curr : currLists) {
+                    if (curr.getTargetCurrencyCode().equalsIgnoreCase(targetCurrencyCode)) {
+                        return curr;
+                    }
+                }
+            }
+            throw new UnknownCurrencyException(targetCurrencyCode);
         }
-        scan.close();
-
-        // Define and search for target currency code in source currency json file
-        JSONObject obj = new JSONObject(str);
-        JSONObject currJSON = obj.getJSONObject(targetCurrencyCode.toLowerCase());
-        String target_target_curr_name = currJSON.getString("name");
-        Double curr_rate = currJSON.getDouble("rate");
-        Double curr_rrate = currJSON.getDouble("inverseRate");
-
-        String source_curr_code = sourceCurrencyCode.toUpperCase();
-        String target_curr_code = targetCurrencyCode.toUpperCase();
 
-        scan.close();
-        return new Currency(target_target_curr_name, source_curr_code, target_curr_code, curr_rate, curr_rrate);
+        // Scan the upstreamed json files for target currency code only, skipping other entries
+        Currency curr = ((FloatratesRateSource) source).find(sourceCurrencyCode, targetCurrencyCode);
+        if (curr != null) {
+            return curr;
+        }
+        throw new UnknownCurrencyException(targetCurrencyCode);
     }
 
     /**
      * Get the currency exchange rate from source currency to target currency
      *
+     * @param out the stream to display into
      * @param sourceCurrencyCode source currency code
      * @param targetCurrencyCode destination currency code
      * @throws Exception if any parse error occurred
      * @see getCalculatedCurrencyExchangeRate(String sourceCurrencyCode, String targetCurrencyCode, double rates)
      */
-    private static void getCurrencyExchangeByJSON(String sourceCurrencyCode, String targetCurrencyCode) throws Exception {
+    private static void getCurrencyExchangeByJSON(PrintStream out, String sourceCurrencyCode, String targetCurrencyCode) throws Exception {
         // Take a query for in-between currency exchange rate from currency exchange site
         Currency curr = getBetweenCurrencyExchangeRate(sourceCurrencyCode, targetCurrencyCode);
 
@@ -146,24 +628,25 @@ public class CurrencyParser {
         String target_curr_code = targetCurrencyCode.toUpperCase();
 
         // Display the conversion rate between source and destination currency
-        System.out.println(source_curr_code + " <--> " + target_curr_code + " exchange information:");
-        System.out.println("---------------------------------------------------");
-        System.out.println("[!] Target currency : " + target_curr_name);
-        System.out.printf("[B] %s to %s rate : %s %15.5f%n", source_curr_code, target_curr_code, target_curr_code, curr_rate);
-        System.out.printf("[S] %s to %s rate : %s %15.5f%n", target_curr_code, source_curr_code, source_curr_code, curr_rrate);
+        out.println(source_curr_code + " <--> " + target_curr_code + " exchange information:");
+        out.println("---------------------------------------------------");
+        out.println("[!] Target currency : " + target_curr_name);
+        out.printf("[B] %s to %s rate : %s %15.5f%n", source_curr_code, target_curr_code, target_curr_code, curr_rate);
+        out.printf("[S] %s to %s rate : %s %15.5f%n", target_curr_code, source_curr_code, source_curr_code, curr_rrate);
     }
 
     /**
      * Calculate the currency exchange rate from source currency to target
      * currency with specified price
      *
+     * @param out the stream to display into
      * @param sourceCurrencyCode source currency code
      * @param targetCurrencyCode destination currency code
      * @param rates specified currency exchange rate
      * @throws Exception if any parse error occurred
      * @see getCurrencyExchangeByJSON(String sourceCurrencyCode, String targetCurrencyCode)
      */
-    private static void getCalculatedCurrencyExchangeRate(String sourceCurrencyCode, String targetCurrencyCode, double rates) throws Exception {
+    private static void getCalculatedCurrencyExchangeRate(PrintStream out, String sourceCurrencyCode, String targetCurrencyCode, double rates) throws Exception {
         // Take a query for in-between currency exchange rate from currency exchange site
         Currency curr = getBetweenCurrencyExchangeRate(sourceCurrencyCode, targetCurrencyCode);
 
@@ -172,12 +655,16 @@ public class CurrencyParser {
         String target_curr_code = targetCurrencyCode.toUpperCase();
 
         Double calculatedRate = curr.calculateExchangeRate(rates);
+        Metrics recorder = metrics;
+        if (recorder != null) {
+            recorder.increment("conversions");
+        }
 
         // Display the conversion rate between source and destination currency
-        System.out.printf("%s %.2f to %s exchange rate:%n", source_curr_code, rates, target_curr_code);
-        System.out.println("---------------------------------------------------");
-        System.out.println("[!] Target currency : " + target_curr_name);
-        System.out.printf("[B] %s to %s rate : %s %15.5f%n", source_curr_code, target_curr_code, target_curr_code, calculatedRate);
+        out.printf("%s %.2f to %s exchange rate:%n", source_curr_code, rates, target_curr_code);
+        out.println("---------------------------------------------------");
+        out.println("[!] Target currency : " + target_curr_name);
+        out.printf("[B] %s to %s rate : %s %15.5f%n", source_curr_code, target_curr_code, target_curr_code, calculatedRate);
     }
 
     /**
@@ -186,18 +673,19 @@ public class CurrencyParser {
      * would offered for another and the another currency rate offered with that
      * currency.
      *
+     * @param out the stream to display into
      * @param sourceCurrencyCode the source currency code to show in currency
      * exchange table
      * @throws Exception if any parse failure occurred
      * @see getWholeSortedCurrencyExchangeTableFromJSON(String sourceCurrencyCode,
      *   boolean local, boolean sortByCurrencyCode)
      */
-    private static void getWholeCurrencyExchangeTableFromJSON(String sourceCurrencyCode) throws Exception {
+    private static void getWholeCurrencyExchangeTableFromJSON(PrintStream out, String sourceCurrencyCode) throws Exception {
         // Take a query for currency exchange table from currency exchange site
         ArrayList<Currency> currencyExchanges = getCurrencyExchangeLists(sourceCurrencyCode);
 
-        System.out.println(sourceCurrencyCode.toUpperCase() + " exchange information:");
-        System.out.println("---------------------------------------------------");
+        out.println(sourceCurrencyCode.toUpperCase() + " exchange information:");
+        out.println("---------------------------------------------------");
         
         for (Currency curr : currencyExchanges) {
             // Gather & print the properties
@@ -207,7 +695,7 @@ public class CurrencyParser {
             Double curr_rrate = curr.getCurrencyExchangeRate(true);
             String source_curr_code = curr.getLocalCurrencyCode();
 
-            System.out.printf("%-30s : %s %10.3f | %s %10.5f%n", target_curr_name, source_curr_code, curr_rrate, target_curr_code, curr_rate);
+            out.printf("%-30s : %s %10.3f | %s %10.5f%n", target_curr_name, source_curr_code, curr_rrate, target_curr_code, curr_rate);
         }
     }
 
@@ -217,6 +705,8 @@ public class CurrencyParser {
      * offered for another and the another currency rate offered with that
      * currency
      *
+     * @param out the stream to display into
+     * @param format the table format to display in
      * @param sourceCurrencyCode the source currency code to show in currency
      * exchange table
      * @param local show column buy another currency first instead of sell it
@@ -225,38 +715,22 @@ public class CurrencyParser {
      * code?
      * @throws Exception if any parse failure occurred
      */
-    private static void getWholeSortedCurrencyExchangeTableFromJSON(String sourceCurrencyCode, boolean local, boolean sortByCurrencyCode) throws Exception {
+    private static void getWholeSortedCurrencyExchangeTableFromJSON(PrintStream out, TableRenderer.Format format, String sourceCurrencyCode, boolean local, boolean sortByCurrencyCode) throws Exception {
         // Take a query for currency exchange table from currency exchange site
-        ArrayList<Currency> currLists = getCurrencyExchangeLists(sourceCurrencyCode);
+        CurrencyTable table = getCurrencyTable(sourceCurrencyCode);
 
-        // Sort using selected comparator (currency code if true or currency name if false)
-        if (sortByCurrencyCode == true) {
-            currLists.sort(Currency.CurrencyCodeComparator);
-        } else {
-            currLists.sort(Currency.CurrencyNameComparator);
-        }
+        // Take the pre-sorted view (currency code if true or currency name if false)
+        List<Currency> currLists = (sortByCurrencyCode == true) ? table.sortedByCode() : table.sortedByName();
 
-        // Display the exchange rate table
-        Iterator<Currency> extractInfo = currLists.iterator();
-        int index = 0;
-        System.out.println(sourceCurrencyCode.toUpperCase() + " exchange information: " + ((local) ? "(buy / sell)" : "(sell / buy)"));
-        System.out.println("--------------------------------------------------------------------------");
-        try {
-            while (extractInfo.hasNext()) {
-                if (local == true) {
-                    System.out.printf("%-30s : %s %15.5f | %s %15.5f%n", currLists.get(index).getTargetCurrencyExchangeName(),
-                            currLists.get(index).getLocalCurrencyCode(), currLists.get(index).getCurrencyExchangeRate(true),
-                            currLists.get(index).getTargetCurrencyCode(), currLists.get(index).getCurrencyExchangeRate(false));
-                } else {
-                    System.out.printf("%-30s : %s %15.5f | %s %15.5f%n", currLists.get(index).getTargetCurrencyExchangeName(),
-                            currLists.get(index).getTargetCurrencyCode(), currLists.get(index).getCurrencyExchangeRate(false),
-                            currLists.get(index).getLocalCurrencyCode(), currLists.get(index).getCurrencyExchangeRate(true));
-                }
-                index++;
-            }
-        } catch (Exception e) {
-            System.out.println("Done!");
+        // Display the exchange rate table, buffered and flushed in large chunks
+        TableRenderer renderer = new TableRenderer(out, format);
+        renderer.begin(sourceCurrencyCode.toUpperCase() + " exchange information: " + ((local) ? "(buy / sell)" : "(sell / buy)"),
+                "--------------------------------------------------------------------------");
+        for (Currency curr : currLists) {
+            renderer.exchange(curr, local);
         }
+        renderer.line("Done!");
+        renderer.flush();
     }
 
     /**
@@ -264,15 +738,17 @@ public class CurrencyParser {
      * currency for another currency prices or buy another currency using local
      * currency price (sorted by currency name).
      *
+     * @param out the stream to display into
+     * @param format the table format to display in
      * @param sourceCurrencyCode the source currency code to show the currency
      * table
      * @param buys show column to buy another currency instead of sell it for
      * another currency?
      * @throws Exception if any parse failure occurred
      */
-    private static void getWholeCurrencyBuysSellsColumnFromJSON(String sourceCurrencyCode, boolean buys) throws Exception {
+    private static void getWholeCurrencyBuysSellsColumnFromJSON(PrintStream out, TableRenderer.Format format, String sourceCurrencyCode, boolean buys) throws Exception {
         // Call another getWholeCurrencyBuysSellsColumnFromJSON() method but sorted by currency name
-        getWholeCurrencyBuysSellsColumnFromJSON(sourceCurrencyCode, buys, false);
+        getWholeCurrencyBuysSellsColumnFromJSON(out, format, sourceCurrencyCode, buys, false);
     }
 
     /**
@@ -280,6 +756,8 @@ public class CurrencyParser {
      * currency for another currency prices or buy another currency using local
      * currency price (sorted by currency name or currency code).
      *
+     * @param out the stream to display into
+     * @param format the table format to display in
      * @param sourceCurrencyCode the source currency code to show the currency
      * table
      * @param buys show column to buy another currency instead of sell it for
@@ -288,48 +766,148 @@ public class CurrencyParser {
      * code?
      * @throws Exception if any parse failure occurred
      */
-    private static void getWholeCurrencyBuysSellsColumnFromJSON(String sourceCurrencyCode, boolean buys, boolean sortByCurrencyCode) throws Exception {
+    private static void getWholeCurrencyBuysSellsColumnFromJSON(PrintStream out, TableRenderer.Format format, String sourceCurrencyCode, boolean buys, boolean sortByCurrencyCode) throws Exception {
         // Take a query for currency exchange table from currency exchange site
-        ArrayList<Currency> currLists = getCurrencyExchangeLists(sourceCurrencyCode);
+        CurrencyTable table = getCurrencyTable(sourceCurrencyCode);
 
-        // Sort using selected comparator (currency code if true or currency name if false)
-        if (sortByCurrencyCode == true) {
-            currLists.sort(Currency.CurrencyCodeComparator);
-        } else {
-            currLists.sort(Currency.CurrencyNameComparator);
+        // Take the pre-sorted view (currency code if true or currency name if false)
+        List<Currency> currLists = (sortByCurrencyCode == true) ? table.sortedByCode() : table.sortedByName();
+
+        // Display the buy/sell table, buffered and flushed in large chunks
+        TableRenderer renderer = new TableRenderer(out, format);
+        renderer.begin(sourceCurrencyCode.toUpperCase() + " currency " + ((buys == true) ? "buy" : "sell") + " information:",
+                "----------------------------------------------------");
+        for (Currency curr : currLists) {
+            renderer.rate(curr, buys);
+        }
+        renderer.line("---------------------------------------------------");
+        renderer.line("Done!");
+        renderer.flush();
+    }
+
+    /**
+     * The main method to display the help guide or parse it with command line
+     * arguments
+     *
+     * @param args arguments to pass to provide the JSON Currency Information
+     * using inputted parameters
+     */
+    public static void main(String[] args) {
+        try {
+            // Answer from the last known rates first if a snapshot file is given
+            String snapshot = System.getProperty("jsoncurrency.snapshot");
+            if (snapshot != null) {
+                // Bases fetched together, e.g. when a server warms up, are written at once
+                setSnapshotStore(new SnapshotStore(Paths.get(snapshot), 1, TimeUnit.SECONDS));
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(CurrencyParser.class.getName()).log(Level.WARNING, "Could not read currency snapshot", ex);
+        }
+        try {
+            // Fetch from another registered source if one is given
+            String source = System.getProperty("jsoncurrency.source");
+            if (source != null) {
+                setRateSource(RateSource.forName(source));
+            }
+        } catch (IllegalArgumentException | ServiceConfigurationError ex) {
+            Logger.getLogger(CurrencyParser.class.getName()).log(Level.WARNING, "Could not select rate source", ex);
+        }
+        try {
+            // Record every fetched table if a history directory is given
+            String history = System.getProperty("jsoncurrency.history");
+            if (history != null) {
+                setRateHistory(new RateHistory(Paths.get(history), 1, TimeUnit.SECONDS));
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(CurrencyParser.class.getName()).log(Level.WARNING, "Could not read rate history", ex);
+        }
+        try {
+            // Keep every raw feed fetched if an archive directory is given
+            String archive = System.getProperty("jsoncurrency.archive");
+            if (archive != null) {
+                final FeedArchive feeds = new FeedArchive(Paths.get(archive));
+                setFeedArchive(feeds);
+                // Force the archived feeds to the disk before exiting
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        feeds.close();
+                    } catch (IOException e) {
+                        Logger.getLogger(CurrencyParser.class.getName()).log(Level.WARNING, "Could not write feed archive " + feeds.getDirectory(), e);
+                    }
+                }));
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(CurrencyParser.class.getName()).log(Level.WARNING, "Could not read feed archive", ex);
         }
 
-        // Display the buy/sell table
-        Iterator<Currency> extractInfo = currLists.iterator();
-        int index = 0;
-        System.out.println(sourceCurrencyCode.toUpperCase() + " currency " + ((buys == true) ? "buy" : "sell") + " information:");
-        System.out.println("----------------------------------------------------");
         try {
-            while (extractInfo.hasNext()) {
-                if (buys == true) {
-                    System.out.printf("%-30s : %s %15.5f%n", currLists.get(index).getTargetCurrencyExchangeName(),
-                            currLists.get(index).getLocalCurrencyCode(), currLists.get(index).getCurrencyExchangeRate(true));
-                } else {
-                    System.out.printf("%-30s : %s %15.5f%n", currLists.get(index).getTargetCurrencyExchangeName(),
-                            currLists.get(index).getTargetCurrencyCode(), currLists.get(index).getCurrencyExchangeRate(false));
+            // Display the exchange tables as CSV or JSON Lines if asked for
+            String format = System.getProperty("jsoncurrency.format");
+            if (format != null) {
+                setTableFormat(TableRenderer.Format.forName(format));
+            }
+        } catch (IllegalArgumentException ex) {
+            Logger.getLogger(CurrencyParser.class.getName()).log(Level.WARNING, "Could not select table format", ex);
+        }
+
+        // Record metrics if asked for, exposed through JMX or dumped after the command
+        String metricsExport = System.getProperty("jsoncurrency.metrics");
+        if (metricsExport != null) {
+            setMetrics(new Metrics());
+            if (metricsExport.equals("jmx")) {
+                try {
+                    new JmxMetricsExporter().export(metrics);
+                } catch (JMException ex) {
+                    Logger.getLogger(CurrencyParser.class.getName()).log(Level.WARNING, "Could not register metrics MBean", ex);
                 }
-                index++;
             }
-        } catch (Exception e) {
-            // Finished, because no more data to parse it..
-            System.out.println("---------------------------------------------------");
-            System.out.println("Done!");
+        }
+
+        if (args.length >= 1 && args[0].equals("serve")) {
+            // Keep the exchange tables warm and answer queries until stopped
+            try {
+                RateServer.serve(Arrays.copyOfRange(args, 1, args.length));
+            } catch (Exception ex) {
+                Logger.getLogger(CurrencyParser.class.getName()).log(Level.SEVERE, null, ex);
+                System.err.println("Could not start currency exchange server!");
+            }
+            return;
+        }
+
+        // Let a running server answer if one is given, or answer locally if it is unreachable
+        String server = System.getProperty("jsoncurrency.server", System.getenv("JSONCURRENCY_SERVER"));
+        if (server != null && RateServer.forward(server, args, System.out, System.err)) {
+            return;
+        }
+        run(args, System.out, System.err);
+        if ("prometheus".equals(metricsExport)) {
+            new PrometheusMetricsExporter(System.err).export(metrics);
         }
     }
 
     /**
-     * The main method to display the help guide or parse it with command line
-     * arguments
+     * Display the help guide or parse the command line arguments
      *
      * @param args arguments to pass to provide the JSON Currency Information
      * using inputted parameters
+     * @param out the stream to display into
+     * @param err the stream to display errors into
      */
-    public static void main(String[] args) {
+    static void run(String[] args, PrintStream out, PrintStream err) {
+        run(args, tableFormat, out, err);
+    }
+
+    /**
+     * Display the help guide or parse the command line arguments, displaying
+     * the exchange tables in a given format
+     *
+     * @param args arguments to pass to provide the JSON Currency Information
+     * using inputted parameters
+     * @param format the table format to display in
+     * @param out the stream to display into
+     * @param err the stream to display errors into
+     */
+    static void run(String[] args, TableRenderer.Format format, PrintStream out, PrintStream err) {
         boolean showInLocales, sortByCurrencyCode;
         try {
             if (args.length == 0 || args[0].equals("help")) {
@@ -337,14 +915,14 @@ public class CurrencyParser {
                 throw new NoSuchFieldException("Help");
             } else if (args.length == 1 && args[0].equals("demo")) {
                 // Demonstrate USD currency table by 
-                getWholeSortedCurrencyExchangeTableFromJSON("USD", false, true);
+                getWholeSortedCurrencyExchangeTableFromJSON(out, format, "USD", false, true);
             } else if (args.length == 2 && !(args[1].startsWith("-showInLocalCurrency") || args[1].startsWith("-sortByCurrencyCode") || args[1].startsWith("-buy") || args[1].startsWith("-sell"))) {
                 // Two parameters but for currency codes
-                getCurrencyExchangeByJSON(args[0], args[1]); //money conversion
+                getCurrencyExchangeByJSON(out, args[0], args[1]); //money conversion
             } else if (args.length == 3 && !(args[1].startsWith("-showInLocalCurrency") || args[1].startsWith("-sortByCurrencyCode") || args[1].startsWith("-buy") || args[1].startsWith("-sell"))) {
                 // Buy local to target with selected price
                 try {
-                    getCalculatedCurrencyExchangeRate(args[0], args[1], Double.parseDouble(args[2]));
+                    getCalculatedCurrencyExchangeRate(out, args[0], args[1], Double.parseDouble(args[2]));
                 } catch (Exception e) {
                     throw new Exception("Parsing error!");
                 }
@@ -354,116 +932,124 @@ public class CurrencyParser {
                         && (args[2].equals("-sortByCurrencyCode") || args[2].equals("-sortByCurrencyCode:true") || args[2].equals("-sortByCurrencyCode:false"))) {
                     showInLocales = (args[1].equals("-showInLocalCurrency")) ? true : Boolean.parseBoolean(args[1].split(":")[1]);
                     sortByCurrencyCode = (args[2].equals("-sortByCurrencyCode")) ? true : Boolean.parseBoolean(args[2].split(":")[1]);
-                    getWholeSortedCurrencyExchangeTableFromJSON(args[0], showInLocales, sortByCurrencyCode); //Sort by currency code and View Local
+                    getWholeSortedCurrencyExchangeTableFromJSON(out, format, args[0], showInLocales, sortByCurrencyCode); //Sort by currency code and View Local
                 }
                 else if ((args[2].equals("-showInLocalCurrency") || args[2].equals("-showInLocalCurrency:true") || args[2].equals("-showInLocalCurrency:false"))
                         && (args[1].equals("-sortByCurrencyCode") || args[1].equals("-sortByCurrencyCode:true") || args[1].equals("-sortByCurrencyCode:false"))) {
                     showInLocales = (args[2].equals("-showInLocalCurrency")) ? true : Boolean.parseBoolean(args[2].split(":")[1]);
                     sortByCurrencyCode = (args[1].equals("-sortByCurrencyCode")) ? true : Boolean.parseBoolean(args[1].split(":")[1]);
-                    getWholeSortedCurrencyExchangeTableFromJSON(args[0], showInLocales, sortByCurrencyCode); //Sort by currency code and View Local
+                    getWholeSortedCurrencyExchangeTableFromJSON(out, format, args[0], showInLocales, sortByCurrencyCode); //Sort by currency code and View Local
                 }
 
                 // If displays currency buy or sell table ([-buy or -sell] and -sortByCurrencyCode)
                 else if (args[1].equals("-buy") && (args[2].equals("-sortByCurrencyCode") || args[2].equals("-sortByCurrencyCode:true") || args[2].equals("-sortByCurrencyCode:false"))) {
                     sortByCurrencyCode = (args[2].equals("-sortByCurrencyCode")) ? true : Boolean.parseBoolean(args[2].split(":")[1]);
-                    getWholeCurrencyBuysSellsColumnFromJSON(args[0], true, sortByCurrencyCode); //Sort the currency buy table by currency code
+                    getWholeCurrencyBuysSellsColumnFromJSON(out, format, args[0], true, sortByCurrencyCode); //Sort the currency buy table by currency code
                 }
                 else if (args[1].equals("-sell") && (args[2].equals("-sortByCurrencyCode") || args[2].equals("-sortByCurrencyCode:true") || args[2].equals("-sortByCurrencyCode:false"))) {
                     sortByCurrencyCode = (args[2].equals("-sortByCurrencyCode")) ? true : Boolean.parseBoolean(args[2].split(":")[1]);
-                    getWholeCurrencyBuysSellsColumnFromJSON(args[0], false, sortByCurrencyCode); //Sort the currency sell table by currency code
+                    getWholeCurrencyBuysSellsColumnFromJSON(out, format, args[0], false, sortByCurrencyCode); //Sort the currency sell table by currency code
                 }
             } else if (args.length == 2) {
                 switch (args[1]) {
                     // If buy the target currency with local currency price
                     case "-buy":
-                        getWholeCurrencyBuysSellsColumnFromJSON(args[0], true); //View currency buy rate
+                        getWholeCurrencyBuysSellsColumnFromJSON(out, format, args[0], true); //View currency buy rate
                         break;
                     // If sell/offer local currency for target currency price
                     case "-sell":
-                        getWholeCurrencyBuysSellsColumnFromJSON(args[0], false); //View currency sell rate
+                        getWholeCurrencyBuysSellsColumnFromJSON(out, format, args[0], false); //View currency sell rate
                         break;
                     // Prioritize to show in local currency display first
                     case "-showInLocalCurrency":
                     case "-showInLocalCurrency:true":
                     case "-showInLocalCurrency:false":
                         showInLocales = (args[1].equals("-showInLocalCurrency")) ? true : Boolean.parseBoolean(args[1].split(":")[1]);
-                        getWholeSortedCurrencyExchangeTableFromJSON(args[0], showInLocales, false); //View Local
+                        getWholeSortedCurrencyExchangeTableFromJSON(out, format, args[0], showInLocales, false); //View Local
                         break;
                     // Sort by currency code
                     case "-sortByCurrencyCode":
                     case "-sortByCurrencyCode:true":
                     case "-sortByCurrencyCode:false":
                         sortByCurrencyCode = (args[1].equals("-sortByCurrencyCode")) ? true : Boolean.parseBoolean(args[1].split(":")[1]);
-                        getWholeSortedCurrencyExchangeTableFromJSON(args[0], false, sortByCurrencyCode); //Sort by currency code
+                        getWholeSortedCurrencyExchangeTableFromJSON(out, format, args[0], false, sortByCurrencyCode); //Sort by currency code
                         break;
                 }
             } else if (args.length == 1) {
                 // Show currency table (Defaultly, display offered price first and sorted by currency name)
-                getWholeSortedCurrencyExchangeTableFromJSON(args[0], false, false);
+                getWholeSortedCurrencyExchangeTableFromJSON(out, format, args[0], false, false);
             } else {
                 throw new Exception("Invalid command");
             }
 
         } catch (NoSuchFieldException ex) {
-            showHelp();
+            showHelp(out);
         } catch (Exception ex) {
+            countError();
             Logger.getLogger(CurrencyParser.class.getName()).log(Level.SEVERE, null, ex);
-            System.err.println("Invalid command line parameter specified!");
-            System.err.println("Please try with \'jsoncurrency.jar\' for parameters and further information!");
+            err.println("Invalid command line parameter specified!");
+            err.println("Please try with \'jsoncurrency.jar\' for parameters and further information!");
         }
     }
     
     /**
      * Display JSON Currency Parser command line informations
+     *
+     * @param out the stream to display into
      */
-    private static void showHelp() {
-        System.out.println("JSON Currency Parser");
-            System.out.println("------------------------------------------");
-            System.out.println("Basic command line parameters:");
-            System.out.println("\'jsoncurrency.jar (help)\':\n"
+    private static void showHelp(PrintStream out) {
+        out.println("JSON Currency Parser");
+            out.println("------------------------------------------");
+            out.println("Basic command line parameters:");
+            out.println("\'jsoncurrency.jar (help)\':\n"
                     + " - Get help about JSON Currency Parser (you can empty the parameters or type 'help')");
-            System.out.println("");
+            out.println("");
 
-            System.out.println("\'jsoncurrency.jar demo\':\n"
+            out.println("\'jsoncurrency.jar demo\':\n"
                     + " - Show demo from JSON Currency Parser (show USD conversion table, sorted in currency code)");
-            System.out.println("");
+            out.println("");
 
-            System.out.println("\'jsoncurrency.jar <currencyCode>\':\n"
+            out.println("\'jsoncurrency.jar <currencyCode>\':\n"
                     + " - Show currency exchange table from a currency <currencyCode>\n"
                     + " - Example : \'jsoncurrency.jar usd\' -> shows USD exchange table");
-            System.out.println("");
+            out.println("");
 
-            System.out.println("\'jsoncurrency.jar <currencyCode> -buy/-sell\':\n"
+            out.println("\'jsoncurrency.jar <currencyCode> -buy/-sell\':\n"
                     + " - Show currency buy/sell table rate from a currency <currencyCode>\n"
                     + " - Example : \'jsoncurrency.jar usd -sell\' -> shows USD sell table");
-            System.out.println("");
+            out.println("");
 
-            System.out.println("\'jsoncurrency.jar <currencyFrom> <currencyTo>\':\n"
+            out.println("\'jsoncurrency.jar <currencyFrom> <currencyTo>\':\n"
                     + " - Show currency exchange rate from local currency <currencyFrom> to target currency <currencyTo>\n"
                     + " - Example : \'jsoncurrency.jar usd idr\' -> shows USD to IDR exchange rate");
-            System.out.println("");
+            out.println("");
 
-            System.out.println("\'jsoncurrency.jar <currencyFrom> <currencyTo> <localCurrencyRate>\':\n"
+            out.println("\'jsoncurrency.jar <currencyFrom> <currencyTo> <localCurrencyRate>\':\n"
                     + " - Calculate price of local currency <currencyFrom> to target currency <currencyTo>\n"
                     + " - Example : \'jsoncurrency.jar usd idr 25\' -> calculate USD 25 to IDR");
-            System.out.println("");
+            out.println("");
+
+            out.println("\'jsoncurrency.jar serve (port)\':\n"
+                    + " - Keep exchange tables warm and answer queries at http://127.0.0.1:<port>/ (def: 8089)\n"
+                    + " - Run the command lines with \'-Djsoncurrency.server=http://127.0.0.1:<port>\' to use it");
+            out.println("");
 
-            System.out.println("Addtional Parameters for <currencyCodeExchanges>:");
-            System.out.println(" >> {\'-buy\' or \'-sell\' or \'-showInLocalCurrency:[true/false]\'}, \'-sortByCurrencyCode:[true/false]\'");
-            System.out.println("----------------------------------------------------------------------------------");
+            out.println("Addtional Parameters for <currencyCodeExchanges>:");
+            out.println(" >> {\'-buy\' or \'-sell\' or \'-showInLocalCurrency:[true/false]\'}, \'-sortByCurrencyCode:[true/false]\'");
+            out.println("----------------------------------------------------------------------------------");
 
-            System.out.println("Currency buy/sell rate:");
-            System.out.println("\'-buy\': Show currency buy rate. Cannot paired with \'-showInLocalCurrency:[true/false]\'");
-            System.out.println("\'-sell\': Show currency sell rate. Cannot paired with \'-showInLocalCurrency:[true/false]\'");
-            System.out.println("");
+            out.println("Currency buy/sell rate:");
+            out.println("\'-buy\': Show currency buy rate. Cannot paired with \'-showInLocalCurrency:[true/false]\'");
+            out.println("\'-sell\': Show currency sell rate. Cannot paired with \'-showInLocalCurrency:[true/false]\'");
+            out.println("");
 
-            System.out.println("\'-showInLocalCurrency:[true/false]\': Show currency exchange table by display local currency first (def: false)");
-            System.out.println(">> If true, display local currency first. Else, display target currency first. Cannot paired with \'-buy\' or \'-sell\'");
-            System.out.println("");
+            out.println("\'-showInLocalCurrency:[true/false]\': Show currency exchange table by display local currency first (def: false)");
+            out.println(">> If true, display local currency first. Else, display target currency first. Cannot paired with \'-buy\' or \'-sell\'");
+            out.println("");
 
-            System.out.println("\'-sortByCurrencyCode:[true/false]\': Show currency exchange table by sort the currency code (def: false)");
-            System.out.println(">> If true, sort by currency code. Else, sort by country name.");
-            System.out.println("");
+            out.println("\'-sortByCurrencyCode:[true/false]\': Show currency exchange table by sort the currency code (def: false)");
+            out.println(">> If true, sort by currency code. Else, sort by country name.");
+            out.println("");
     }
     
 }
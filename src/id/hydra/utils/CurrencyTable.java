@@ -0,0 +1,233 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Immutable currency exchange table of one base currency with a constant
+ * time index by currency code and views sorted by name, by code and by rate,
+ * all built once when the table is created. Names are upper cased once into
+ * sort keys instead of on every comparison, and the name view supports prefix
+ * search.
+ * <br> Example: <code>CurrencyParser.getCurrencyTable("usd").searchByName("dol")</code>
+ *
+ * @author ShinyDove
+ */
+public final class CurrencyTable {
+
+    private final String baseCurrencyCode;
+    private final List<Currency> currencies;
+
+    /**
+     * List index by CurrencyCode id, -1 for currencies not in the table
+     */
+    private final int[] positions;
+
+    /**
+     * Upper case names in name order, for prefix search
+     */
+    private final String[] sortedNameKeys;
+    private final List<Currency> byName, byCode, byRateAscending, byRateDescending;
+
+    /**
+     * Create a currency table from a base currency exchange table
+     *
+     * @param baseCurrencyCode the base (local) currency code of the table
+     * @param baseTable Currency exchange list of the base currency
+     */
+    public CurrencyTable(String baseCurrencyCode, List<Currency> baseTable) {
+        this.baseCurrencyCode = baseCurrencyCode.toUpperCase();
+        this.currencies = Collections.unmodifiableList(new ArrayList<>(baseTable));
+        int size = currencies.size();
+
+        // Sort keys computed once, the same upper casing as Currency.CurrencyNameComparator
+        final String[] nameKeys = new String[size], codeKeys = new String[size];
+        final double[] rates = new double[size];
+        int[] ids = new int[size];
+        for (int i = 0; i < size; i++) {
+            Currency curr = currencies.get(i);
+            nameKeys[i] = curr.getTargetCurrencyExchangeName().toUpperCase();
+            codeKeys[i] = curr.getTargetCurrencyCode().toUpperCase();
+            rates[i] = curr.getExchangeRate();
+            // Codes which are not three letters are listed but cannot be looked up by id
+            ids[i] = CurrencyCode.isValid(codeKeys[i]) ? CurrencyCode.register(codeKeys[i]) : CurrencyCode.UNKNOWN;
+        }
+
+        positions = new int[CurrencyCode.size()];
+        Arrays.fill(positions, -1);
+        for (int i = size - 1; i >= 0; i--) {
+            if (ids[i] != CurrencyCode.UNKNOWN) {
+                positions[ids[i]] = i; // the first entry of a code wins
+            }
+        }
+
+        Integer[] nameOrder = sortedOrder(size, (Integer a, Integer b) -> nameKeys[a].compareTo(nameKeys[b]));
+        sortedNameKeys = new String[size];
+        for (int i = 0; i < size; i++) {
+            sortedNameKeys[i] = nameKeys[nameOrder[i]];
+        }
+        byName = view(nameOrder);
+        byCode = view(sortedOrder(size, (Integer a, Integer b) -> codeKeys[a].compareTo(codeKeys[b])));
+        byRateAscending = view(sortedOrder(size, (Integer a, Integer b) -> Double.compare(rates[a], rates[b])));
+        byRateDescending = view(sortedOrder(size, (Integer a, Integer b) -> Double.compare(rates[b], rates[a])));
+    }
+
+    /**
+     * Get the base currency code
+     *
+     * @return upper case base currency code
+     */
+    public String getBaseCurrencyCode() {
+        return baseCurrencyCode;
+    }
+
+    /**
+     * Get the count of currencies
+     *
+     * @return currency count
+     */
+    public int size() {
+        return currencies.size();
+    }
+
+    /**
+     * Get the currencies in feed order
+     *
+     * @return unmodifiable currency exchange list
+     */
+    public List<Currency> asList() {
+        return currencies;
+    }
+
+    /**
+     * Get the currency of a target currency code without scanning or
+     * allocating, unless the code is not three letters
+     *
+     * @param targetCurrencyCode the target currency code (any case)
+     * @return the currency, or null if it is not in the table
+     */
+    public Currency get(CharSequence targetCurrencyCode) {
+        int id = CurrencyCode.idOf(targetCurrencyCode);
+        if (id == CurrencyCode.UNKNOWN && !CurrencyCode.isValid(targetCurrencyCode)) {
+            for (Currency curr : currencies) {
+                if (curr.getTargetCurrencyCode().equalsIgnoreCase(targetCurrencyCode.toString())) {
+                    return curr;
+                }
+            }
+            return null;
+        }
+        int position = (id >= 0 && id < positions.length) ? positions[id] : -1;
+        return (position >= 0) ? currencies.get(position) : null;
+    }
+
+    /**
+     * Check whether a target currency code is in the table
+     *
+     * @param targetCurrencyCode the target currency code (any case)
+     * @return true if the currency is in the table
+     */
+    public boolean contains(CharSequence targetCurrencyCode) {
+        return get(targetCurrencyCode) != null;
+    }
+
+    /**
+     * Get the currencies sorted by name, the same order as
+     * Currency.CurrencyNameComparator
+     *
+     * @return unmodifiable sorted view
+     */
+    public List<Currency> sortedByName() {
+        return byName;
+    }
+
+    /**
+     * Get the currencies sorted by currency code, the same order as
+     * Currency.CurrencyCodeComparator
+     *
+     * @return unmodifiable sorted view
+     */
+    public List<Currency> sortedByCode() {
+        return byCode;
+    }
+
+    /**
+     * Get the currencies sorted by exchange rate
+     *
+     * @param descending highest rate first instead of lowest?
+     * @return unmodifiable sorted view
+     */
+    public List<Currency> sortedByRate(boolean descending) {
+        return descending ? byRateDescending : byRateAscending;
+    }
+
+    /**
+     * Find the currencies whose name starts with a prefix, ignoring case
+     *
+     * @param namePrefix the start of currency names
+     * @return unmodifiable view of the matching currencies in name order,
+     * empty if none
+     */
+    public List<Currency> searchByName(String namePrefix) {
+        String key = namePrefix.toUpperCase();
+        int first = Arrays.binarySearch(sortedNameKeys, key);
+        if (first < 0) {
+            first = -first - 1;
+        } else {
+            while (first > 0 && sortedNameKeys[first - 1].equals(key)) {
+                first--;
+            }
+        }
+        int last = first;
+        while (last < sortedNameKeys.length && sortedNameKeys[last].startsWith(key)) {
+            last++;
+        }
+        return byName.subList(first, last);
+    }
+
+    /**
+     * Check whether this table was built from the same fetch as a list. Every
+     * fetch creates new Currency instances, so comparing the first and last
+     * instances is enough.
+     */
+    boolean hasSameEntries(List<Currency> baseTable) {
+        int size = currencies.size();
+        return baseTable.size() == size
+                && (size == 0 || (baseTable.get(0) == currencies.get(0) && baseTable.get(size - 1) == currencies.get(size - 1)));
+    }
+
+    private static Integer[] sortedOrder(int size, Comparator<Integer> comparator) {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        // Stable, so equal keys keep the feed order like List.sort() does
+        Arrays.sort(order, comparator);
+        return order;
+    }
+
+    private List<Currency> view(Integer[] order) {
+        Currency[] sorted = new Currency[order.length];
+        for (int i = 0; i < order.length; i++) {
+            sorted[i] = currencies.get(order[i]);
+        }
+        return Collections.unmodifiableList(Arrays.asList(sorted));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Rate source reading floatrates-format "####.json" files (lower case
+ * currency code, e.g. "usd.json") from a local directory, such as a mirror of
+ * the feeds or test fixtures. A parsed table is kept until its file is
+ * modified, so answering an unchanged table costs a single file stat. Base
+ * codes must be ASCII letters and digits, so no code reads a file outside the
+ * directory.
+ * <br> Example: <code>new DirectoryRateSource(Paths.get("/var/lib/rates"))</code>
+ *
+ * @author ShinyDove
+ */
+public class DirectoryRateSource implements RateSource {
+
+    private static final Pattern BASE_CODE = Pattern.compile("[A-Za-z0-9]+");
+
+    /**
+     * A parsed table and the attributes of the file it was read from
+     */
+    private static final class ReadTable {
+
+        final FileTime lastModified;
+        final long size;
+        final List<Currency> currencies;
+
+        ReadTable(FileTime lastModified, long size, List<Currency> currencies) {
+            this.lastModified = lastModified;
+            this.size = size;
+            this.currencies = currencies;
+        }
+    }
+
+    private final Path directory;
+    private final ConcurrentHashMap<String, ReadTable> read = new ConcurrentHashMap<>();
+
+    /**
+     * Create a source of the directory given by the
+     * "jsoncurrency.source.directory" system property ("rates" if not set)
+     */
+    public DirectoryRateSource() {
+        this(Paths.get(System.getProperty("jsoncurrency.source.directory", "rates")));
+    }
+
+    /**
+     * Create a source of a directory
+     *
+     * @param directory the directory holding the feed files
+     */
+    public DirectoryRateSource(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Get the directory holding the feed files
+     *
+     * @return feed directory path
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public String getName() {
+        return "directory";
+    }
+
+    @Override
+    public List<Currency> fetch(String baseCurrencyCode) throws IOException {
+        if (!BASE_CODE.matcher(baseCurrencyCode).matches()) {
+            // Such as "../../etc/feed" coming from a server query
+            throw new IllegalArgumentException("Not a currency code: " + baseCurrencyCode);
+        }
+        String code = baseCurrencyCode.toUpperCase();
+        Path file = directory.resolve(baseCurrencyCode.toLowerCase() + ".json");
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+
+        ReadTable table = read.get(code);
+        if (table != null && table.lastModified.equals(attributes.lastModifiedTime()) && table.size == attributes.size()) {
+            return table.currencies;
+        }
+        List<Currency> currencies;
+        Metrics metrics = CurrencyParser.getMetrics();
+        long start = (metrics != null) ? System.nanoTime() : 0;
+        try (RateFeedReader reader = new RateFeedReader(Files.newInputStream(file), code)) {
+            currencies = Collections.unmodifiableList(reader.readAll());
+        }
+        if (metrics != null) {
+            metrics.record("parse", System.nanoTime() - start);
+            metrics.add("parse.entries", currencies.size());
+        }
+        read.put(code, new ReadTable(attributes.lastModifiedTime(), attributes.size(), currencies));
+        return currencies;
+    }
+}
@@ -0,0 +1,677 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Append-only archive of the raw feeds fetched from the web, for audit. Every
+ * feed body is stored byte for byte in a segment file, and a side index file
+ * keeps the byte range of every currency entry of the feed, so a historical
+ * lookup memory-maps the segment and decodes only the requested entries
+ * instead of parsing whole feeds. A feed identical to the previous one of its
+ * base is only indexed again, pointing at the bytes already stored. A new
+ * process continues the last segment and its index, and a segment is only
+ * rolled once it reaches the maximum segment size.
+ * <br>Segment layout (big-endian), file name "feeds-NNNNNN.arc":
+ * <pre>
+ * header  : magic "JCFA", version (short), reserved (short)
+ * records : { base length (byte), base (ASCII), fetchedAt (long), length (int), feed (raw bytes) }
+ * </pre>
+ * <br>Index layout (big-endian), file name "feeds-NNNNNN.idx":
+ * <pre>
+ * header  : magic "JCFI", version (short), reserved (short)
+ * records : { base length (byte), base (ASCII), segment (int), fetchedAt (long), feed offset (long),
+ *             feed length (int), entryCount (short),
+ *             entryCount x { key length (byte), key (ASCII), entry offset in feed (int), entry length (int) } }
+ * </pre>
+ * <br> Example: <code>archive.find("usd", "idr", order.getPlacedAt().toEpochMilli())</code>
+ *
+ * @author ShinyDove
+ */
+public class FeedArchive implements Closeable {
+
+    private static final int SEGMENT_MAGIC = 0x4A434641; // "JCFA"
+    private static final int INDEX_MAGIC = 0x4A434649; // "JCFI"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 2 + 2;
+    private static final String FILE_PREFIX = "feeds-", SEGMENT_SUFFIX = ".arc", INDEX_SUFFIX = ".idx";
+
+    /**
+     * Segments are rolled once they reach this size by default
+     */
+    public static final long DEFAULT_SEGMENT_SIZE = 64L << 20;
+
+    /**
+     * The location of an archived feed and of its entries
+     */
+    private static final class ArchivedFeed {
+
+        final int segment;
+        final long fetchedAt, offset;
+        final int length;
+        final String[] keys;
+        final int[] entryOffsets, entryLengths;
+
+        ArchivedFeed(int segment, long fetchedAt, long offset, int length, String[] keys, int[] entryOffsets, int[] entryLengths) {
+            this.segment = segment;
+            this.fetchedAt = fetchedAt;
+            this.offset = offset;
+            this.length = length;
+            this.keys = keys;
+            this.entryOffsets = entryOffsets;
+            this.entryLengths = entryLengths;
+        }
+
+        int indexOf(String key) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private final Path directory;
+    private final long maxSegmentSize;
+    private final HashMap<String, TreeMap<Long, ArchivedFeed>> feeds = new HashMap<>();
+    private final HashMap<Integer, MappedByteBuffer> mapped = new HashMap<>();
+    private FileChannel segmentChannel, indexChannel;
+    private int segment;
+    private long segmentSize;
+    private int nextSegment = 1;
+    private long lastIndexLength;
+
+    /**
+     * Create an archive rolling segments at DEFAULT_SEGMENT_SIZE, call load()
+     * before appending to read the existing indexes
+     *
+     * @param directory the archive directory
+     */
+    public FeedArchive(Path directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Create an archive, call load() before appending to read the existing
+     * indexes
+     *
+     * @param directory the archive directory
+     * @param maxSegmentSize the size in bytes from which a new segment is
+     * started, at most Integer.MAX_VALUE (a larger feed gets a segment of its
+     * own)
+     */
+    public FeedArchive(Path directory, long maxSegmentSize) {
+        if (directory == null) {
+            throw new IllegalArgumentException("An archive directory is required");
+        } else if (maxSegmentSize <= HEADER_SIZE || maxSegmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size must be positive and at most " + Integer.MAX_VALUE);
+        }
+        this.directory = directory;
+        this.maxSegmentSize = maxSegmentSize;
+    }
+
+    /**
+     * Get the archive directory
+     *
+     * @return archive directory path
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Read every index file of the directory, oldest first. Records cut short
+     * by a crash at the end of an index, and the records from the first one
+     * whose feed bytes are missing from its segment on, are left out.
+     *
+     * @return count of archived feeds
+     * @throws IOException if an index could not be read or is not a feed
+     * archive index
+     */
+    public synchronized int load() throws IOException {
+        int count = 0;
+        if (!Files.isDirectory(directory)) {
+            return count;
+        }
+        TreeMap<Integer, Path> indexes = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + INDEX_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    indexes.put(Integer.parseInt(name.substring(FILE_PREFIX.length(), name.length() - INDEX_SUFFIX.length())), file);
+                } catch (NumberFormatException e) {
+                    // Not an index of ours
+                }
+            }
+        }
+        for (Map.Entry<Integer, Path> index : indexes.entrySet()) {
+            count += readIndex(index.getValue());
+            nextSegment = Math.max(nextSegment, index.getKey() + 1);
+        }
+        return count;
+    }
+
+    /**
+     * Archive a raw feed
+     *
+     * @param baseCurrencyCode the base currency code of the feed
+     * @param fetchedAt the time the feed was fetched, milliseconds since the
+     * epoch
+     * @param json the raw feed body
+     * @throws IOException if the feed could not be written, or is not a JSON
+     * object of currency entries
+     */
+    public synchronized void append(String baseCurrencyCode, long fetchedAt, byte[] json) throws IOException {
+        String base = baseCurrencyCode.toUpperCase();
+        List<String> keys = new ArrayList<>();
+        List<int[]> ranges = new ArrayList<>();
+        scanEntries(json, keys, ranges);
+        if (keys.size() > 0xFFFF) {
+            throw new IOException("Too many entries for a feed archive index: " + keys.size());
+        }
+        String[] entryKeys = keys.toArray(new String[0]);
+        int[] entryOffsets = new int[ranges.size()], entryLengths = new int[ranges.size()];
+        for (int i = 0; i < entryOffsets.length; i++) {
+            entryOffsets[i] = ranges.get(i)[0];
+            entryLengths[i] = ranges.get(i)[1];
+        }
+
+        TreeMap<Long, ArchivedFeed> archived = feeds.get(base);
+        ArchivedFeed previous = (archived != null && !archived.isEmpty()) ? archived.lastEntry().getValue() : null;
+        ArchivedFeed feed;
+        if (previous != null && previous.length == json.length && slice(previous).equals(ByteBuffer.wrap(json))) {
+            // Unchanged since the previous fetch, index the stored bytes again
+            feed = new ArchivedFeed(previous.segment, fetchedAt, previous.offset, previous.length, previous.keys,
+                    previous.entryOffsets, previous.entryLengths);
+        } else {
+            byte[] code = base.getBytes(StandardCharsets.US_ASCII);
+            int recordHeader = 1 + code.length + 8 + 4;
+            if (segmentChannel == null) {
+                openLast();
+            }
+            if (segmentSize > HEADER_SIZE && segmentSize + recordHeader + json.length > maxSegmentSize) {
+                roll();
+            }
+            ByteBuffer header = ByteBuffer.allocate(recordHeader);
+            putCode(header, base);
+            header.putLong(fetchedAt).putInt(json.length).flip();
+            writeFully(segmentChannel, header);
+            writeFully(segmentChannel, ByteBuffer.wrap(json));
+            feed = new ArchivedFeed(segment, fetchedAt, segmentSize + recordHeader, json.length, entryKeys, entryOffsets, entryLengths);
+            segmentSize += recordHeader + json.length;
+        }
+        if (indexChannel == null) {
+            openLast();
+        }
+
+        int size = 1 + base.length() + 4 + 8 + 8 + 4 + 2;
+        for (String key : feed.keys) {
+            size += 1 + key.length() + 4 + 4;
+        }
+        ByteBuffer record = ByteBuffer.allocate(size);
+        putCode(record, base);
+        record.putInt(feed.segment).putLong(fetchedAt).putLong(feed.offset).putInt(feed.length).putShort((short) feed.keys.length);
+        for (int i = 0; i < feed.keys.length; i++) {
+            putCode(record, feed.keys[i]);
+            record.putInt(feed.entryOffsets[i]).putInt(feed.entryLengths[i]);
+        }
+        record.flip();
+        writeFully(indexChannel, record);
+        feeds.computeIfAbsent(base, (String key) -> new TreeMap<>()).put(fetchedAt, feed);
+    }
+
+    /**
+     * Find a currency entry of the latest feed of a base fetched at or before
+     * a time, decoding only that entry
+     *
+     * @param baseCurrencyCode the base currency code
+     * @param targetCurrencyCode the target currency code
+     * @param timeMillis milliseconds since the epoch
+     * @return the currency, or null if no feed was archived by then or it does
+     * not have the target
+     * @throws IOException if the segment could not be read
+     * @throws org.json.JSONException if the entry is malformed
+     */
+    public Currency find(String baseCurrencyCode, String targetCurrencyCode, long timeMillis) throws IOException {
+        ByteBuffer entry;
+        synchronized (this) {
+            ArchivedFeed feed = feedAsOf(baseCurrencyCode, timeMillis);
+            int index = (feed != null) ? feed.indexOf(targetCurrencyCode.toLowerCase()) : -1;
+            if (index < 0) {
+                return null;
+            }
+            entry = slice(feed, feed.entryOffsets[index], feed.entryLengths[index]);
+        }
+        return decode(entry, baseCurrencyCode);
+    }
+
+    /**
+     * Replay a currency entry of every feed of a base fetched within a time
+     * range, decoding only that entry of each feed
+     *
+     * @param baseCurrencyCode the base currency code
+     * @param targetCurrencyCode the target currency code
+     * @param startMillis the start of the range (inclusive), milliseconds
+     * since the epoch
+     * @param endMillis the end of the range (exclusive), milliseconds since
+     * the epoch
+     * @return map of fetch time to the currency, in time order, leaving out
+     * feeds without the target
+     * @throws IOException if a segment could not be read
+     */
+    public TreeMap<Long, Currency> replay(String baseCurrencyCode, String targetCurrencyCode, long startMillis, long endMillis) throws IOException {
+        String key = targetCurrencyCode.toLowerCase();
+        TreeMap<Long, ByteBuffer> entries = new TreeMap<>();
+        synchronized (this) {
+            TreeMap<Long, ArchivedFeed> archived = feeds.get(baseCurrencyCode.toUpperCase());
+            if (archived != null && startMillis < endMillis) {
+                for (ArchivedFeed feed : archived.subMap(startMillis, endMillis).values()) {
+                    int index = feed.indexOf(key);
+                    if (index >= 0) {
+                        entries.put(feed.fetchedAt, slice(feed, feed.entryOffsets[index], feed.entryLengths[index]));
+                    }
+                }
+            }
+        }
+        TreeMap<Long, Currency> currencies = new TreeMap<>();
+        for (Map.Entry<Long, ByteBuffer> entry : entries.entrySet()) {
+            currencies.put(entry.getKey(), decode(entry.getValue(), baseCurrencyCode));
+        }
+        return currencies;
+    }
+
+    /**
+     * Decode the whole latest feed of a base fetched at or before a time
+     *
+     * @param baseCurrencyCode the base currency code
+     * @param timeMillis milliseconds since the epoch
+     * @return Currency exchange list of the feed, or null if no feed was
+     * archived by then
+     * @throws IOException if the segment could not be read
+     */
+    public List<Currency> getTable(String baseCurrencyCode, long timeMillis) throws IOException {
+        ByteBuffer raw = getRaw(baseCurrencyCode, timeMillis);
+        if (raw == null) {
+            return null;
+        }
+        try (RateFeedReader reader = new RateFeedReader(new BufferInputStream(raw), baseCurrencyCode)) {
+            return reader.readAll();
+        }
+    }
+
+    /**
+     * Get the raw bytes of the latest feed of a base fetched at or before a
+     * time, as archived
+     *
+     * @param baseCurrencyCode the base currency code
+     * @param timeMillis milliseconds since the epoch
+     * @return read-only buffer over the mapped segment, or null if no feed was
+     * archived by then
+     * @throws IOException if the segment could not be mapped
+     */
+    public synchronized ByteBuffer getRaw(String baseCurrencyCode, long timeMillis) throws IOException {
+        ArchivedFeed feed = feedAsOf(baseCurrencyCode, timeMillis);
+        return (feed != null) ? slice(feed) : null;
+    }
+
+    /**
+     * Get the fetch times of the archived feeds of a base
+     *
+     * @param baseCurrencyCode the base currency code
+     * @return fetch times in milliseconds since the epoch, in time order
+     */
+    public synchronized long[] getFetchTimes(String baseCurrencyCode) {
+        TreeMap<Long, ArchivedFeed> archived = feeds.get(baseCurrencyCode.toUpperCase());
+        if (archived == null) {
+            return new long[0];
+        }
+        long[] times = new long[archived.size()];
+        int i = 0;
+        for (long time : archived.keySet()) {
+            times[i++] = time;
+        }
+        return times;
+    }
+
+    /**
+     * Get the archived base currencies
+     *
+     * @return unmodifiable set of upper case base currency codes
+     */
+    public synchronized Set<String> getBaseCodes() {
+        return Collections.unmodifiableSet(new TreeSet<>(feeds.keySet()));
+    }
+
+    /**
+     * Force the current segment and index to the disk
+     *
+     * @throws IOException if they could not be written
+     */
+    public synchronized void flush() throws IOException {
+        if (segmentChannel != null) {
+            segmentChannel.force(true);
+            indexChannel.force(true);
+        }
+    }
+
+    /**
+     * Flush and close the current segment. Lookups remain possible, appends
+     * continue the segment.
+     *
+     * @throws IOException if the segment could not be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (segmentChannel != null) {
+            try {
+                flush();
+            } finally {
+                segmentChannel.close();
+                indexChannel.close();
+                segmentChannel = null;
+                indexChannel = null;
+                mapped.remove(segment);
+            }
+        }
+    }
+
+    /**
+     * Find the top-level entries of a feed, as keys and { offset, length }
+     * ranges of their values, without decoding them
+     */
+    static void scanEntries(byte[] json, List<String> keys, List<int[]> ranges) throws IOException {
+        try {
+            int i = skipWhitespace(json, 0);
+            if (json[i] != '{') {
+                throw new IOException("A feed must be a JSON object");
+            }
+            i = skipWhitespace(json, i + 1);
+            while (json[i] != '}') {
+                if (json[i] != '"') {
+                    throw new IOException("Expected a key at byte " + i);
+                }
+                int keyEnd = skipString(json, i);
+                keys.add(new String(json, i + 1, keyEnd - i - 2, StandardCharsets.US_ASCII));
+                i = skipWhitespace(json, keyEnd);
+                if (json[i] != ':') {
+                    throw new IOException("Expected a ':' at byte " + i);
+                }
+                int start = skipWhitespace(json, i + 1);
+                int end = skipValue(json, start);
+                ranges.add(new int[]{start, end - start});
+                i = skipWhitespace(json, end);
+                if (json[i] == ',') {
+                    i = skipWhitespace(json, i + 1);
+                } else if (json[i] != '}') {
+                    throw new IOException("Expected a ',' or '}' at byte " + i);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IOException("The feed is truncated", e);
+        }
+    }
+
+    private static int skipWhitespace(byte[] json, int i) {
+        while (json[i] == ' ' || json[i] == '\t' || json[i] == '\n' || json[i] == '\r') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Skip a string starting at its opening quote, returning the index after
+     * the closing quote
+     */
+    private static int skipString(byte[] json, int i) {
+        for (i++; json[i] != '"'; i++) {
+            if (json[i] == '\\') {
+                i++;
+            }
+        }
+        return i + 1;
+    }
+
+    /**
+     * Skip any value, returning the index after it
+     */
+    private static int skipValue(byte[] json, int i) {
+        if (json[i] == '"') {
+            return skipString(json, i);
+        } else if (json[i] != '{' && json[i] != '[') {
+            while (json[i] != ',' && json[i] != '}' && json[i] != ']' && json[i] > ' ') {
+                i++;
+            }
+            return i;
+        }
+        int depth = 0;
+        do {
+            if (json[i] == '"') {
+                i = skipString(json, i);
+                continue;
+            } else if (json[i] == '{' || json[i] == '[') {
+                depth++;
+            } else if (json[i] == '}' || json[i] == ']') {
+                depth--;
+            }
+            i++;
+        } while (depth > 0);
+        return i;
+    }
+
+    /**
+     * Decode a lone entry, reading it straight from the mapped segment
+     */
+    private static Currency decode(ByteBuffer entry, String baseCurrencyCode) throws IOException {
+        return new RateFeedReader(new BufferInputStream(entry), baseCurrencyCode, true, entry.remaining()).nextEntry();
+    }
+
+    private ArchivedFeed feedAsOf(String baseCurrencyCode, long timeMillis) {
+        TreeMap<Long, ArchivedFeed> archived = feeds.get(baseCurrencyCode.toUpperCase());
+        Map.Entry<Long, ArchivedFeed> feed = (archived != null) ? archived.floorEntry(timeMillis) : null;
+        return (feed != null) ? feed.getValue() : null;
+    }
+
+    private ByteBuffer slice(ArchivedFeed feed) throws IOException {
+        return slice(feed, 0, feed.length);
+    }
+
+    /**
+     * Get a read-only view of a byte range of a feed, mapping its segment (or
+     * mapping it again if it grew) on first use. Guarded by this.
+     */
+    private ByteBuffer slice(ArchivedFeed feed, int offset, int length) throws IOException {
+        MappedByteBuffer buffer = mapped.get(feed.segment);
+        if (buffer == null || buffer.capacity() < feed.offset + feed.length) {
+            try (FileChannel channel = FileChannel.open(segmentPath(feed.segment), StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            mapped.put(feed.segment, buffer);
+        }
+        ByteBuffer view = buffer.asReadOnlyBuffer();
+        view.position((int) feed.offset + offset).limit((int) feed.offset + offset + length);
+        return view.slice();
+    }
+
+    /**
+     * Continue the last segment and its index read by load(), or start the
+     * next ones if there are none or the last segment is full
+     */
+    private void openLast() throws IOException {
+        int last = nextSegment - 1;
+        Path segmentFile = segmentPath(last), indexFile = indexPath(last);
+        if (last < 1 || !Files.exists(segmentFile) || !Files.exists(indexFile) || Files.size(segmentFile) >= maxSegmentSize) {
+            roll();
+            return;
+        }
+        segmentChannel = FileChannel.open(segmentFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        indexChannel = FileChannel.open(indexFile, StandardOpenOption.WRITE);
+        // Drop a record cut short by a crash, so the next one can be read after the last complete one
+        indexChannel.truncate(lastIndexLength);
+        indexChannel.position(lastIndexLength);
+        segment = last;
+        segmentSize = segmentChannel.size();
+    }
+
+    /**
+     * Start the next segment and its index
+     */
+    private void roll() throws IOException {
+        if (segmentChannel != null) {
+            close();
+        }
+        Files.createDirectories(directory);
+        int next = nextSegment;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        segmentChannel = FileChannel.open(segmentPath(next), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        header.putInt(SEGMENT_MAGIC).putShort(VERSION).putShort((short) 0).flip();
+        writeFully(segmentChannel, header);
+        indexChannel = FileChannel.open(indexPath(next), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        header.clear();
+        header.putInt(INDEX_MAGIC).putShort(VERSION).putShort((short) 0).flip();
+        writeFully(indexChannel, header);
+        segment = next;
+        segmentSize = HEADER_SIZE;
+        nextSegment = next + 1;
+        lastIndexLength = HEADER_SIZE;
+    }
+
+    private int readIndex(Path index) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(index));
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != INDEX_MAGIC) {
+            throw new IOException(index + " is not a feed archive index");
+        } else if (buffer.getShort() != VERSION) {
+            throw new IOException(index + " has an unsupported feed archive version");
+        }
+        buffer.getShort();
+
+        int count = 0;
+        HashMap<Integer, Long> segmentSizes = new HashMap<>();
+        lastIndexLength = buffer.position();
+        while (buffer.hasRemaining()) {
+            ArchivedFeed feed;
+            String base;
+            try {
+                base = getCode(buffer);
+                int segmentNumber = buffer.getInt();
+                long fetchedAt = buffer.getLong(), offset = buffer.getLong();
+                int length = buffer.getInt(), entryCount = buffer.getShort() & 0xFFFF;
+                String[] keys = new String[entryCount];
+                int[] entryOffsets = new int[entryCount], entryLengths = new int[entryCount];
+                for (int i = 0; i < entryCount; i++) {
+                    keys[i] = getCode(buffer);
+                    entryOffsets[i] = buffer.getInt();
+                    entryLengths[i] = buffer.getInt();
+                }
+                feed = new ArchivedFeed(segmentNumber, fetchedAt, offset, length, keys, entryOffsets, entryLengths);
+            } catch (BufferUnderflowException e) {
+                break; // cut short by a crash, the feeds before it are complete
+            }
+            Long size = segmentSizes.get(feed.segment);
+            if (size == null) {
+                Path file = segmentPath(feed.segment);
+                size = Files.exists(file) ? Files.size(file) : 0;
+                segmentSizes.put(feed.segment, size);
+            }
+            if (feed.offset + feed.length > size) {
+                // The feed bytes never reached the segment, so drop this record like a
+                // torn one, or appends would reuse its offset for other bytes
+                break;
+            }
+            lastIndexLength = buffer.position();
+            feeds.computeIfAbsent(base, (String key) -> new TreeMap<>()).put(feed.fetchedAt, feed);
+            count++;
+        }
+        return count;
+    }
+
+    private Path segmentPath(int number) {
+        return directory.resolve(String.format("%s%06d%s", FILE_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private Path indexPath(int number) {
+        return directory.resolve(String.format("%s%06d%s", FILE_PREFIX, number, INDEX_SUFFIX));
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void putCode(ByteBuffer buffer, String code) throws IOException {
+        byte[] encoded = code.getBytes(StandardCharsets.US_ASCII);
+        if (encoded.length > 0xFF) {
+            throw new IOException("Key too long for a feed archive: " + code);
+        }
+        buffer.put((byte) encoded.length).put(encoded);
+    }
+
+    private static String getCode(ByteBuffer buffer) {
+        byte[] encoded = new byte[buffer.get() & 0xFF];
+        buffer.get(encoded);
+        return new String(encoded, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Stream over a buffer, reading straight from the mapped segment
+     */
+    private static final class BufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            } else if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+    }
+}
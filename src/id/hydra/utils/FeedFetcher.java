@@ -0,0 +1,258 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Fetch currency exchange JSON files over HTTP with timeouts, gzip/deflate
+ * compression and conditional GET. The ETag and Last-Modified validators of
+ * every fetched URL are kept together with its body, so refetching a feed
+ * which did not change costs a single 304 response. Connections are reused
+ * through the JDK keep-alive cache as responses are always read to the end.
+ * <br> Example: <code>new FeedFetcher(5, 30, TimeUnit.SECONDS).fetch("http://www.floatrates.com/daily/usd.json")</code>
+ *
+ * @author ShinyDove
+ */
+public class FeedFetcher {
+
+    /**
+     * A fetched body together with its cache validators
+     */
+    private static final class CachedFeed {
+
+        final String eTag, lastModified;
+        final byte[] body;
+
+        CachedFeed(String eTag, String lastModified, byte[] body) {
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+            this.body = body;
+        }
+    }
+
+    private final int connectTimeoutMillis, readTimeoutMillis;
+    private final ConcurrentHashMap<String, CachedFeed> feeds = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder(), notModified = new LongAdder(), bytesReceived = new LongAdder();
+
+    /**
+     * Create a feed fetcher with 10 seconds connect timeout and 30 seconds read
+     * timeout
+     */
+    public FeedFetcher() {
+        this(10, 30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Create a feed fetcher
+     *
+     * @param connectTimeout time limit to establish a connection
+     * @param readTimeout time limit to wait for data while reading a response
+     * @param unit the time unit of both timeouts
+     */
+    public FeedFetcher(long connectTimeout, long readTimeout, TimeUnit unit) {
+        this.connectTimeoutMillis = (int) Math.min(Integer.MAX_VALUE, unit.toMillis(connectTimeout));
+        this.readTimeoutMillis = (int) Math.min(Integer.MAX_VALUE, unit.toMillis(readTimeout));
+    }
+
+    /**
+     * Fetch a feed, revalidating the previously fetched body of the same URL
+     * with If-None-Match/If-Modified-Since
+     *
+     * @param url the feed URL
+     * @return the (decompressed) feed body, possibly the one kept from an
+     * earlier fetch if the server answered 304 Not Modified
+     * @throws IOException if the feed could not be fetched
+     */
+    public byte[] fetch(String url) throws IOException {
+        return fetch(url, null);
+    }
+
+    /**
+     * Fetch a feed, letting the caller adjust the connection before it is
+     * connected (e.g. per-request timeouts)
+     */
+    byte[] fetch(String url, Consumer<HttpURLConnection> beforeConnect) throws IOException {
+        Metrics metrics = CurrencyParser.getMetrics();
+        if (metrics == null) {
+            return fetchFeed(url, beforeConnect, null);
+        }
+        long start = System.nanoTime();
+        try {
+            byte[] body = fetchFeed(url, beforeConnect, metrics);
+            metrics.record("fetch", System.nanoTime() - start);
+            return body;
+        } catch (IOException | RuntimeException e) {
+            metrics.recordFailure("fetch");
+            throw e;
+        }
+    }
+
+    private byte[] fetchFeed(String url, Consumer<HttpURLConnection> beforeConnect, Metrics metrics) throws IOException {
+        HttpURLConnection connection = openConnection(url);
+        CachedFeed cached = feeds.get(url);
+        if (cached != null) {
+            if (cached.eTag != null) {
+                connection.setRequestProperty("If-None-Match", cached.eTag);
+            }
+            if (cached.lastModified != null) {
+                connection.setRequestProperty("If-Modified-Since", cached.lastModified);
+            }
+        }
+        if (beforeConnect != null) {
+            beforeConnect.accept(connection);
+        }
+
+        requests.increment();
+        int status = connection.getResponseCode();
+        if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+            notModified.increment();
+            if (metrics != null) {
+                metrics.increment("fetch.not_modified");
+            }
+            discard(connection.getInputStream());
+            return cached.body;
+        } else if (status != HttpURLConnection.HTTP_OK) {
+            discard(connection.getErrorStream());
+            throw new IOException("Server returned HTTP response code: " + status + " for URL: " + url);
+        }
+
+        byte[] body;
+        try (InputStream in = decodedStream(connection)) {
+            body = readFully(in, connection.getContentLength());
+        }
+        if (metrics != null) {
+            metrics.add("fetch.bytes", body.length);
+        }
+        String eTag = connection.getHeaderField("ETag"), lastModified = connection.getHeaderField("Last-Modified");
+        if (eTag != null || lastModified != null) {
+            feeds.put(url, new CachedFeed(eTag, lastModified, body));
+        } else {
+            feeds.remove(url);
+        }
+        return body;
+    }
+
+    /**
+     * Open a connection with the configured timeouts, asking for a compressed
+     * response. Read it through decodedStream().
+     *
+     * @param url the feed URL
+     * @return the unconnected HTTP connection
+     * @throws IOException if the URL is not an http(s) URL
+     */
+    public HttpURLConnection openConnection(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        connection.setRequestProperty("Accept-Encoding", "gzip, deflate");
+        return connection;
+    }
+
+    /**
+     * Get the response body of a connection, decompressed according to its
+     * Content-Encoding
+     *
+     * @param connection the HTTP connection
+     * @return the decompressed response body
+     * @throws IOException if the response could not be read
+     */
+    public static InputStream decodedStream(HttpURLConnection connection) throws IOException {
+        InputStream in = connection.getInputStream();
+        String encoding = connection.getContentEncoding();
+        if ("gzip".equalsIgnoreCase(encoding) || "x-gzip".equalsIgnoreCase(encoding)) {
+            return new GZIPInputStream(in, 8192);
+        } else if ("deflate".equalsIgnoreCase(encoding)) {
+            return new InflaterInputStream(in);
+        }
+        return in;
+    }
+
+    /**
+     * Forget the kept body and validators of every URL
+     */
+    public void clear() {
+        feeds.clear();
+    }
+
+    /**
+     * Get the count of HTTP requests made
+     *
+     * @return request count
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * Get the count of requests answered with 304 Not Modified
+     *
+     * @return not modified count
+     */
+    public long getNotModifiedCount() {
+        return notModified.sum();
+    }
+
+    /**
+     * Get the count of (decompressed) body bytes received
+     *
+     * @return received byte count
+     */
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    private byte[] readFully(InputStream in, int contentLength) throws IOException {
+        byte[] body = new byte[(contentLength > 0) ? contentLength : 16384];
+        int length = 0, n;
+        while ((n = in.read(body, length, body.length - length)) >= 0) {
+            length += n;
+            if (length == body.length) {
+                body = Arrays.copyOf(body, body.length * 2);
+            }
+        }
+        bytesReceived.add(length);
+        return (length == body.length) ? body : Arrays.copyOf(body, length);
+    }
+
+    /**
+     * Read a response to the end so its connection goes back to the keep-alive
+     * cache
+     */
+    private static void discard(InputStream in) throws IOException {
+        if (in == null) {
+            return;
+        }
+        byte[] skip = new byte[1024];
+        try {
+            while (in.read(skip) >= 0) {
+                // discard
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
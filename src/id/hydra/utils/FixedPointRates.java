@@ -0,0 +1,378 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Exact money conversion over rates stored as scaled longs (10^-9 units) for
+ * every currency pair of one base currency table. Amounts are longs in minor
+ * units (e.g. cents) of each currency, and results are rounded once with a
+ * configurable rounding mode, so no double arithmetic or BigDecimal is needed
+ * when converting.
+ * <br> Example: <code>rates.convert(CurrencyCode.idOf("USD"), CurrencyCode.idOf("IDR"), 2500)</code>
+ * converts USD 25.00 to IDR minor units
+ *
+ * @author ShinyDove
+ */
+public class FixedPointRates {
+
+    /**
+     * Decimal places of the scaled rates
+     */
+    public static final int RATE_SCALE = 9;
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final int baseId, size;
+    private final RoundingMode roundingMode;
+
+    /**
+     * CurrencyCode id to table index (-1 if not in the table), decimal places
+     * per table index, and the size x size matrix of scaled pair rates
+     */
+    private final int[] indexes;
+    private final int[] decimalPlaces;
+    private final long[] scaledRates;
+
+    /**
+     * Create exact rates from a base currency exchange table, using the JDK
+     * default decimal places of each currency and HALF_EVEN rounding. Entries
+     * whose code is not three letters are left out, see CurrencyCode.isValid().
+     *
+     * @param baseCurrencyCode the base (local) currency code of the table
+     * @param baseTable Currency exchange list of the base currency
+     * @throws IllegalArgumentException if the base code is not three letters
+     */
+    public FixedPointRates(String baseCurrencyCode, List<Currency> baseTable) {
+        this(baseCurrencyCode, baseTable, RoundingMode.HALF_EVEN, null);
+    }
+
+    /**
+     * Create exact rates from a base currency exchange table. Entries whose
+     * code is not three letters are left out, see CurrencyCode.isValid().
+     *
+     * @param baseCurrencyCode the base (local) currency code of the table
+     * @param baseTable Currency exchange list of the base currency
+     * @param roundingMode rounding mode of converted amounts
+     * @param decimalPlacesById decimal places indexed by CurrencyCode id
+     * (negative or missing entries use the JDK default), or null for JDK defaults
+     * @throws IllegalArgumentException if the base code is not three letters
+     */
+    public FixedPointRates(String baseCurrencyCode, List<Currency> baseTable, RoundingMode roundingMode, int[] decimalPlacesById) {
+        this.roundingMode = roundingMode;
+        baseId = CurrencyCode.register(baseCurrencyCode);
+        for (Currency curr : baseTable) {
+            if (CurrencyCode.isValid(curr.getTargetCurrencyCode())) {
+                CurrencyCode.register(curr.getTargetCurrencyCode());
+            }
+        }
+
+        // Table index 0 is the base currency itself
+        int[] ids = new int[baseTable.size() + 1];
+        double[] perBase = new double[ids.length], basePer = new double[ids.length];
+        indexes = new int[CurrencyCode.size()];
+        Arrays.fill(indexes, -1);
+        ids[0] = baseId;
+        perBase[0] = basePer[0] = 1.0;
+        indexes[baseId] = 0;
+        int n = 1;
+        for (Currency curr : baseTable) {
+            int id = CurrencyCode.idOf(curr.getTargetCurrencyCode());
+            if (id == CurrencyCode.UNKNOWN || indexes[id] >= 0) {
+                continue;
+            }
+            indexes[id] = n;
+            ids[n] = id;
+            perBase[n] = curr.getExchangeRate();
+            basePer[n] = curr.getReverseExchangeRate();
+            n++;
+        }
+        size = n;
+
+        decimalPlaces = new int[n];
+        for (int i = 0; i < n; i++) {
+            int places = (decimalPlacesById != null && ids[i] < decimalPlacesById.length) ? decimalPlacesById[ids[i]] : -1;
+            decimalPlaces[i] = (places >= 0) ? places : defaultDecimalPlaces(CurrencyCode.codeOf(ids[i]));
+        }
+
+        // Scale every pair rate once, exactly, so conversions never round twice
+        BigDecimal[] exactPerBase = new BigDecimal[n], exactBasePer = new BigDecimal[n];
+        for (int i = 0; i < n; i++) {
+            exactPerBase[i] = new BigDecimal(perBase[i]);
+            exactBasePer[i] = new BigDecimal(basePer[i]);
+        }
+        scaledRates = new long[n * n];
+        for (int from = 0; from < n; from++) {
+            for (int to = 0; to < n; to++) {
+                scaledRates[from * n + to] = (from == to) ? POWERS_OF_TEN[RATE_SCALE]
+                        : exactBasePer[from].multiply(exactPerBase[to]).setScale(RATE_SCALE, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+            }
+        }
+    }
+
+    /**
+     * Load exact rates from the currency exchange table of a base currency
+     * queried via CurrencyParser
+     *
+     * @param baseCurrencyCode the base currency code, e.g. "usd"
+     * @param roundingMode rounding mode of converted amounts
+     * @return exact rates of the base currency table
+     * @throws Exception if any parse failure occurred
+     */
+    public static FixedPointRates load(String baseCurrencyCode, RoundingMode roundingMode) throws Exception {
+        return new FixedPointRates(baseCurrencyCode, CurrencyParser.getCurrencyExchangeLists(baseCurrencyCode), roundingMode, null);
+    }
+
+    /**
+     * Get the id of the base currency
+     *
+     * @return base currency id
+     */
+    public int getBaseId() {
+        return baseId;
+    }
+
+    /**
+     * Get the rounding mode of converted amounts
+     *
+     * @return rounding mode
+     */
+    public RoundingMode getRoundingMode() {
+        return roundingMode;
+    }
+
+    /**
+     * Check whether a currency has rates in this table
+     *
+     * @param id the currency id
+     * @return true if the currency can be converted with this table
+     */
+    public boolean contains(int id) {
+        return id >= 0 && id < indexes.length && indexes[id] >= 0;
+    }
+
+    /**
+     * Get the decimal places (minor units) used for a currency
+     *
+     * @param id the currency id
+     * @return decimal places of the currency
+     */
+    public int getDecimalPlaces(int id) {
+        return decimalPlaces[index(id)];
+    }
+
+    /**
+     * Get the scaled exchange rate between two currencies
+     *
+     * @param from source currency id
+     * @param to target currency id
+     * @return units of target currency for one unit of source currency,
+     * multiplied by 10^RATE_SCALE
+     */
+    public long getScaledRate(int from, int to) {
+        return scaledRates[index(from) * size + index(to)];
+    }
+
+    /**
+     * Convert an amount in minor units between two currencies without
+     * allocating, rounding once with the configured rounding mode
+     *
+     * @param from source currency id
+     * @param to target currency id
+     * @param amount amount in minor units of source currency
+     * @return amount in minor units of target currency
+     * @throws ArithmeticException if the result does not fit in a long, or if
+     * rounding is needed with RoundingMode.UNNECESSARY
+     */
+    public long convert(int from, int to, long amount) {
+        int fromIndex = index(from), toIndex = index(to);
+        return mulDiv(amount, multiplier(fromIndex, toIndex), divisor(fromIndex, toIndex), roundingMode);
+    }
+
+    /**
+     * Convert a range of amounts between two currencies, looking the pair up
+     * once for the whole range
+     *
+     * @param from source currency id
+     * @param to target currency id
+     * @param amounts amounts in minor units of source currency
+     * @param results receives the amounts in minor units of target currency
+     * at the same indexes
+     * @param start first index to convert
+     * @param end index after the last one to convert
+     */
+    void convertAll(int from, int to, long[] amounts, long[] results, int start, int end) {
+        int fromIndex = index(from), toIndex = index(to);
+        long multiplier = multiplier(fromIndex, toIndex), divisor = divisor(fromIndex, toIndex);
+        RoundingMode mode = roundingMode;
+        for (int i = start; i < end; i++) {
+            results[i] = mulDiv(amounts[i], multiplier, divisor, mode);
+        }
+    }
+
+    /**
+     * target = amount * multiplier / divisor, where multiplier / divisor =
+     * rate * 10^targetPlaces / (10^RATE_SCALE * 10^sourcePlaces)
+     */
+    private long multiplier(int fromIndex, int toIndex) {
+        long rate = scaledRates[fromIndex * size + toIndex];
+        int shift = decimalPlaces[toIndex] - decimalPlaces[fromIndex];
+        return (shift > 0) ? Math.multiplyExact(rate, POWERS_OF_TEN[shift]) : rate;
+    }
+
+    private long divisor(int fromIndex, int toIndex) {
+        int shift = decimalPlaces[toIndex] - decimalPlaces[fromIndex];
+        return (shift < 0) ? Math.multiplyExact(POWERS_OF_TEN[RATE_SCALE], POWERS_OF_TEN[-shift]) : POWERS_OF_TEN[RATE_SCALE];
+    }
+
+    /**
+     * Compute round(a * b / divisor) with a 128-bit intermediate product
+     *
+     * @param a any long
+     * @param b a non-negative long
+     * @param divisor a positive long
+     */
+    static long mulDiv(long a, long b, long divisor, RoundingMode mode) {
+        boolean negative = a < 0;
+        long magnitude = negative ? -a : a; // Long.MIN_VALUE stays unsigned 2^63
+
+        // 128-bit unsigned product of magnitude and b
+        long low = magnitude * b;
+        long high = unsignedMultiplyHigh(magnitude, b);
+        if (Long.compareUnsigned(high, divisor) >= 0) {
+            throw new ArithmeticException("Converted amount overflows a long");
+        }
+        long quotient;
+        if (high == 0 && low >= 0) {
+            // Common case, the product fits in a long
+            quotient = low / divisor;
+        } else {
+            quotient = divideUnsigned128(high, low, divisor);
+        }
+        long remainder = low - quotient * divisor;
+
+        if (remainder != 0 && roundUp(quotient, remainder, divisor, negative, mode)) {
+            quotient++;
+        }
+        if (quotient < 0) {
+            throw new ArithmeticException("Converted amount overflows a long");
+        }
+        return negative ? -quotient : quotient;
+    }
+
+    private static boolean roundUp(long quotient, long remainder, long divisor, boolean negative, RoundingMode mode) {
+        // remainder and divisor are both below 2^63 here
+        int half = Long.compare(remainder, divisor - remainder);
+        switch (mode) {
+            case UP:
+                return true;
+            case DOWN:
+                return false;
+            case CEILING:
+                return !negative;
+            case FLOOR:
+                return negative;
+            case HALF_UP:
+                return half >= 0;
+            case HALF_DOWN:
+                return half > 0;
+            case HALF_EVEN:
+                return half > 0 || (half == 0 && (quotient & 1) != 0);
+            default:
+                throw new ArithmeticException("Rounding necessary");
+        }
+    }
+
+    /**
+     * High 64 bits of the unsigned 128-bit product of x and y
+     */
+    private static long unsignedMultiplyHigh(long x, long y) {
+        long x0 = x & 0xFFFFFFFFL, x1 = x >>> 32;
+        long y0 = y & 0xFFFFFFFFL, y1 = y >>> 32;
+        long w0 = x0 * y0;
+        long t = x1 * y0 + (w0 >>> 32);
+        long w1 = (t & 0xFFFFFFFFL) + x0 * y1;
+        return x1 * y1 + (t >>> 32) + (w1 >>> 32);
+    }
+
+    /**
+     * Unsigned (high:low) / divisor, high must be below divisor so the
+     * quotient fits in 64 bits (long division by 32-bit digits)
+     */
+    private static long divideUnsigned128(long high, long low, long divisor) {
+        // Normalize so the divisor has its top bit set
+        int shift = Long.numberOfLeadingZeros(divisor);
+        divisor <<= shift;
+        if (shift != 0) {
+            high = (high << shift) | (low >>> (64 - shift));
+            low <<= shift;
+        }
+        long d1 = divisor >>> 32, d0 = divisor & 0xFFFFFFFFL;
+        long l1 = low >>> 32, l0 = low & 0xFFFFFFFFL;
+
+        long q1 = Long.divideUnsigned(high, d1);
+        long r = Long.remainderUnsigned(high, d1);
+        while (Long.compareUnsigned(q1, 0xFFFFFFFFL) > 0
+                || Long.compareUnsigned(q1 * d0, (r << 32) | l1) > 0) {
+            q1--;
+            r += d1;
+            if (Long.compareUnsigned(r, 0xFFFFFFFFL) > 0) {
+                break;
+            }
+        }
+        long middle = (high << 32) + l1 - q1 * divisor;
+
+        long q0 = Long.divideUnsigned(middle, d1);
+        r = Long.remainderUnsigned(middle, d1);
+        while (Long.compareUnsigned(q0, 0xFFFFFFFFL) > 0
+                || Long.compareUnsigned(q0 * d0, (r << 32) | l0) > 0) {
+            q0--;
+            r += d1;
+            if (Long.compareUnsigned(r, 0xFFFFFFFFL) > 0) {
+                break;
+            }
+        }
+        return (q1 << 32) | q0;
+    }
+
+    private int index(int id) {
+        int index = (id >= 0 && id < indexes.length) ? indexes[id] : -1;
+        if (index < 0) {
+            throw new IllegalArgumentException("Currency id " + id + " is not in the " + CurrencyCode.codeOf(baseId) + " table");
+        }
+        return index;
+    }
+
+    private static int defaultDecimalPlaces(String currencyCode) {
+        try {
+            int places = java.util.Currency.getInstance(currencyCode).getDefaultFractionDigits();
+            return (places >= 0) ? places : 2;
+        } catch (IllegalArgumentException e) {
+            return 2;
+        }
+    }
+}
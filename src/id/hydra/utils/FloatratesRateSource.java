@@ -0,0 +1,171 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Rate source fetching floatrates-format JSON feeds over HTTP through
+ * CurrencyParser.getFeedFetcher(). Feeds are revalidated with conditional GET
+ * on every fetch, unless a refresh interval is given: a table younger than the
+ * interval is then answered without any request.
+ * <br> Example: <code>new FloatratesRateSource("http://mirror.example.com/daily/####.json", 10, TimeUnit.MINUTES)</code>
+ *
+ * @author ShinyDove
+ */
+public class FloatratesRateSource implements RateSource {
+
+    /**
+     * A parsed table and the time it was fetched
+     */
+    private static final class FetchedTable {
+
+        final long fetchedAt;
+        final List<Currency> currencies;
+
+        FetchedTable(long fetchedAt, List<Currency> currencies) {
+            this.fetchedAt = fetchedAt;
+            this.currencies = currencies;
+        }
+    }
+
+    private final String urlPattern;
+    private final long refreshIntervalNanos;
+    private final ConcurrentHashMap<String, FetchedTable> fetched = new ConcurrentHashMap<>();
+
+    /**
+     * Create a source of CurrencyParser.CURRENCY_EXCHANGE_JSON_ADDRESS which
+     * revalidates on every fetch
+     */
+    public FloatratesRateSource() {
+        this(CurrencyParser.CURRENCY_EXCHANGE_JSON_ADDRESS, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Create a source of floatrates-format feeds
+     *
+     * @param urlPattern the feed URL with "####" in place of the currency
+     * code, e.g. "http://www.floatrates.com/daily/####.json"
+     * @param refreshInterval the time a fetched table is answered without
+     * revalidating it, 0 to revalidate on every fetch
+     * @param unit the time unit of refreshInterval
+     * @throws org.json.JSONException if the URL pattern is not valid
+     */
+    public FloatratesRateSource(String urlPattern, long refreshInterval, TimeUnit unit) {
+        JsonParser.locateJSONfile(urlPattern, "usd"); // fail early on a bad pattern
+        if (refreshInterval < 0) {
+            throw new IllegalArgumentException("Refresh interval must not be negative");
+        }
+        this.urlPattern = urlPattern;
+        this.refreshIntervalNanos = unit.toNanos(refreshInterval);
+    }
+
+    @Override
+    public String getName() {
+        return "floatrates";
+    }
+
+    @Override
+    public List<Currency> fetch(String baseCurrencyCode) throws Exception {
+        return fetch(baseCurrencyCode, null);
+    }
+
+    /**
+     * Fetch a table, letting the caller adjust the connection before it is
+     * connected (e.g. per-request timeouts)
+     */
+    List<Currency> fetch(String baseCurrencyCode, Consumer<HttpURLConnection> beforeConnect) throws Exception {
+        String code = baseCurrencyCode.toUpperCase();
+        if (refreshIntervalNanos > 0) {
+            FetchedTable table = fetched.get(code);
+            if (table != null && System.nanoTime() - table.fetchedAt < refreshIntervalNanos) {
+                return table.currencies;
+            }
+        }
+
+        byte[] json = CurrencyParser.getFeedFetcher().fetch(locate(code), beforeConnect);
+        FeedArchive archive = CurrencyParser.getFeedArchive();
+        if (archive != null) {
+            try {
+                archive.append(code, System.currentTimeMillis(), json);
+            } catch (IOException e) {
+                Logger.getLogger(FloatratesRateSource.class.getName()).log(Level.WARNING, "Could not archive " + code + " feed", e);
+            }
+        }
+        Metrics metrics = CurrencyParser.getMetrics();
+        long start = (metrics != null) ? System.nanoTime() : 0;
+        List<Currency> currencies;
+        try (RateFeedReader reader = new RateFeedReader(new ByteArrayInputStream(json), code)) {
+            currencies = Collections.unmodifiableList(reader.readAll());
+        }
+        if (metrics != null) {
+            metrics.record("parse", System.nanoTime() - start);
+            metrics.add("parse.entries", currencies.size());
+        }
+        if (refreshIntervalNanos > 0) {
+            fetched.put(code, new FetchedTable(System.nanoTime(), currencies));
+        }
+        return currencies;
+    }
+
+    /**
+     * Find a single currency of a base table, skipping the other entries and
+     * dropping the rest of the feed once found
+     *
+     * @param baseCurrencyCode the base currency code
+     * @param targetCurrencyCode the target currency code
+     * @return the currency, or null if the table does not have it
+     * @throws IOException if the feed could not be fetched or parsed
+     */
+    Currency find(String baseCurrencyCode, String targetCurrencyCode) throws IOException {
+        Metrics metrics = CurrencyParser.getMetrics();
+        long start = (metrics != null) ? System.nanoTime() : 0;
+        HttpURLConnection connection = CurrencyParser.getFeedFetcher().openConnection(locate(baseCurrencyCode));
+        try {
+            RateFeedReader reader = new RateFeedReader(FeedFetcher.decodedStream(connection), baseCurrencyCode, false);
+            Currency found = reader.find(targetCurrencyCode);
+            if (metrics != null) {
+                // Fetching and parsing overlap while streaming, recorded as one fetch
+                metrics.record("fetch", System.nanoTime() - start);
+            }
+            return found;
+        } catch (IOException | RuntimeException e) {
+            if (metrics != null) {
+                metrics.recordFailure("fetch");
+            }
+            throw e;
+        } finally {
+            // Drop the rest of the feed instead of draining it to reuse the connection
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Get the feed URL of a base currency, feed names are lower case
+     */
+    private String locate(String baseCurrencyCode) {
+        return JsonParser.locateJSONfile(urlPattern, baseCurrencyCode.toLowerCase());
+    }
+}
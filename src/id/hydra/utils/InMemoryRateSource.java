@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rate source answering with tables published by the application itself,
+ * e.g. from an internal rate bus or in benchmarks without network access.
+ * A table is answered as last published until it is replaced.
+ * <br> Example: <code>source.putRates("usd", Collections.singletonMap("IDR", 14150.0))</code>
+ *
+ * @author ShinyDove
+ */
+public class InMemoryRateSource implements RateSource {
+
+    private final ConcurrentHashMap<String, List<Currency>> tables = new ConcurrentHashMap<>();
+
+    @Override
+    public String getName() {
+        return "memory";
+    }
+
+    /**
+     * Publish the currency exchange table of a base currency, replacing the
+     * previous one
+     *
+     * @param baseCurrencyCode the base (local) currency code
+     * @param baseTable Currency exchange list of the base currency
+     */
+    public void put(String baseCurrencyCode, List<Currency> baseTable) {
+        tables.put(baseCurrencyCode.toUpperCase(), Collections.unmodifiableList(new ArrayList<>(baseTable)));
+    }
+
+    /**
+     * Publish the exchange rates of a base currency, replacing the previous
+     * table. Currency names are set to the currency codes.
+     *
+     * @param baseCurrencyCode the base (local) currency code
+     * @param rates map of target currency code to units of target currency for
+     * one unit of base currency
+     */
+    public void putRates(String baseCurrencyCode, Map<String, Double> rates) {
+        String base = baseCurrencyCode.toUpperCase();
+        List<Currency> baseTable = new ArrayList<>(rates.size());
+        for (Map.Entry<String, Double> rate : rates.entrySet()) {
+            String target = rate.getKey().toUpperCase();
+            baseTable.add(new Currency(target, base, target, rate.getValue(), 1.0 / rate.getValue()));
+        }
+        tables.put(base, Collections.unmodifiableList(baseTable));
+    }
+
+    /**
+     * Withdraw the table of a base currency
+     *
+     * @param baseCurrencyCode the base currency code
+     */
+    public void remove(String baseCurrencyCode) {
+        tables.remove(baseCurrencyCode.toUpperCase());
+    }
+
+    @Override
+    public List<Currency> fetch(String baseCurrencyCode) throws FileNotFoundException {
+        List<Currency> table = tables.get(baseCurrencyCode.toUpperCase());
+        if (table == null) {
+            throw new FileNotFoundException("No " + baseCurrencyCode.toUpperCase() + " exchange table published in memory");
+        }
+        return table;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Expose Metrics live as a read-only MBean of the platform MBean server
+ * (e.g. for JConsole). Counters are attributes of their own name, and every
+ * latency has count, failures, mean, p50, p95, p99 and max attributes in
+ * milliseconds, e.g. "fetch.p95Millis". Metrics created after the export show
+ * up the next time the MBean info is read.
+ * <br> Example: <code>new JmxMetricsExporter().export(CurrencyParser.getMetrics())</code>
+ *
+ * @author ShinyDove
+ */
+public class JmxMetricsExporter implements MetricsExporter {
+
+    /**
+     * The object name used if none is given
+     */
+    public static final String DEFAULT_OBJECT_NAME = "id.hydra.utils:type=Metrics";
+
+    private static final String[] LATENCY_ATTRIBUTES = {"count", "failures", "meanMillis", "p50Millis", "p95Millis", "p99Millis", "maxMillis"};
+
+    private final ObjectName objectName;
+
+    /**
+     * Create an exporter registering DEFAULT_OBJECT_NAME
+     */
+    public JmxMetricsExporter() {
+        this(DEFAULT_OBJECT_NAME);
+    }
+
+    /**
+     * Create an exporter
+     *
+     * @param objectName the object name of the MBean
+     * @throws IllegalArgumentException if the object name is not valid
+     */
+    public JmxMetricsExporter(String objectName) {
+        try {
+            this.objectName = new ObjectName(objectName);
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Invalid object name: " + objectName, e);
+        }
+    }
+
+    /**
+     * Get the object name of the MBean
+     *
+     * @return object name
+     */
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    /**
+     * Register the MBean of the metrics, replacing the one registered before
+     * under the same object name
+     *
+     * @param metrics the metrics to expose
+     * @throws JMException if the MBean could not be registered
+     */
+    @Override
+    public void export(Metrics metrics) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+        server.registerMBean(new MetricsMBean(metrics), objectName);
+    }
+
+    /**
+     * Unregister the MBean, if registered
+     *
+     * @throws JMException if the MBean could not be unregistered
+     */
+    public void unexport() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+    }
+
+    /**
+     * Read-only MBean reading the metrics on every attribute access
+     */
+    private static final class MetricsMBean implements DynamicMBean {
+
+        private final Metrics metrics;
+
+        MetricsMBean(Metrics metrics) {
+            this.metrics = metrics;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            Long count = metrics.getCounters().get(attribute);
+            if (count != null) {
+                return count;
+            }
+            int split = attribute.lastIndexOf('.');
+            LatencyHistogram latency = (split > 0) ? metrics.getLatencies().get(attribute.substring(0, split)) : null;
+            if (latency != null) {
+                switch (attribute.substring(split + 1)) {
+                    case "count":
+                        return latency.getCount();
+                    case "failures":
+                        return latency.getFailureCount();
+                    case "meanMillis":
+                        return latency.getMean(TimeUnit.MILLISECONDS);
+                    case "p50Millis":
+                        return latency.getPercentile(50, TimeUnit.MICROSECONDS) / 1000.0;
+                    case "p95Millis":
+                        return latency.getPercentile(95, TimeUnit.MICROSECONDS) / 1000.0;
+                    case "p99Millis":
+                        return latency.getPercentile(99, TimeUnit.MICROSECONDS) / 1000.0;
+                    case "maxMillis":
+                        return latency.getMax(TimeUnit.MICROSECONDS) / 1000.0;
+                }
+            }
+            throw new AttributeNotFoundException("No metric named " + attribute);
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList values = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    values.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException e) {
+                    // left out, as the DynamicMBean contract asks
+                }
+            }
+            return values;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            // Metrics have no operations
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (String counter : metrics.getCounters().keySet()) {
+                attributes.add(new MBeanAttributeInfo(counter, "long", "Counter " + counter, true, false, false));
+            }
+            for (Map.Entry<String, LatencyHistogram> latency : metrics.getLatencies().entrySet()) {
+                for (String attribute : LATENCY_ATTRIBUTES) {
+                    String type = attribute.endsWith("Millis") ? "double" : "long";
+                    attributes.add(new MBeanAttributeInfo(latency.getKey() + "." + attribute, type,
+                            "Latency " + latency.getKey() + " " + attribute, true, false, false));
+                }
+            }
+            return new MBeanInfo(Metrics.class.getName(), "jsoncurrency metrics",
+                    attributes.toArray(new MBeanAttributeInfo[attributes.size()]), null, null, null);
+        }
+    }
+}
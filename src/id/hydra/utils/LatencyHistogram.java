@@ -0,0 +1,160 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent histogram of latencies in microseconds with logarithmic buckets
+ * of 8 sub-buckets per power of two, so any recorded latency is known within
+ * 12.5%. Recording is lock-free and never allocates, and percentiles are read
+ * by scanning the fixed bucket array.
+ * <br> Example: <code>histogram.getPercentile(95, TimeUnit.MILLISECONDS)</code>
+ *
+ * @author ShinyDove
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder(), totalMicros = new LongAdder(), failures = new LongAdder();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Record a latency
+     *
+     * @param latency the latency, negative values count as 0
+     * @param unit the time unit of latency
+     */
+    public void record(long latency, TimeUnit unit) {
+        long micros = Math.max(0, unit.toMicros(latency));
+        counts.incrementAndGet(bucketOf(micros));
+        count.increment();
+        totalMicros.add(micros);
+        long max;
+        while (micros > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, micros)) {
+            // retry with the new maximum
+        }
+    }
+
+    /**
+     * Record a failed call, which has no latency
+     */
+    public void recordFailure() {
+        failures.increment();
+    }
+
+    /**
+     * Get the count of recorded latencies
+     *
+     * @return latency count
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Get the count of recorded failures
+     *
+     * @return failure count
+     */
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    /**
+     * Get the latency below which a percentage of the recorded latencies fall
+     *
+     * @param percentile the percentage, e.g. 95 for the 95th percentile
+     * @param unit the time unit of the result
+     * @return upper bound of the bucket holding the percentile, 0 if nothing
+     * was recorded
+     */
+    public long getPercentile(double percentile, TimeUnit unit) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100");
+        }
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            total += snapshot[i] = counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total)), seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return unit.convert(Math.min(upperBoundOf(i), maxMicros.get()), TimeUnit.MICROSECONDS);
+            }
+        }
+        return unit.convert(maxMicros.get(), TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * Get the mean of the recorded latencies
+     *
+     * @param unit the time unit of the result
+     * @return mean latency, 0 if nothing was recorded
+     */
+    public double getMean(TimeUnit unit) {
+        long n = count.sum();
+        return (n == 0) ? 0 : (double) totalMicros.sum() / n * 1000.0 / unit.toNanos(1);
+    }
+
+    /**
+     * Get the highest recorded latency
+     *
+     * @param unit the time unit of the result
+     * @return maximum latency, 0 if nothing was recorded
+     */
+    public long getMax(TimeUnit unit) {
+        return unit.convert(maxMicros.get(), TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d, failures=%d, mean=%.1fms, p50=%dms, p95=%dms, p99=%dms, max=%dms",
+                getCount(), getFailureCount(), getMean(TimeUnit.MILLISECONDS), getPercentile(50, TimeUnit.MILLISECONDS),
+                getPercentile(95, TimeUnit.MILLISECONDS), getPercentile(99, TimeUnit.MILLISECONDS), getMax(TimeUnit.MILLISECONDS));
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        long lower = (long) (SUB_BUCKETS + (bucket - SUB_BUCKETS) % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
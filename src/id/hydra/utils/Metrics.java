@@ -0,0 +1,141 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Named counters and latency histograms of the fetch, parse and convert
+ * stages, recorded once set with CurrencyParser.setMetrics(). Without metrics
+ * set, instrumented code only checks CurrencyParser.getMetrics() for null, and
+ * the primitive RateTable and FixedPointRates conversions are not instrumented
+ * at all. Metrics are read through a MetricsExporter. Recorded names:
+ * <br> <code>fetch</code> - latency of HTTP feed fetches, failures included
+ * <br> <code>fetch.bytes</code>, <code>fetch.not_modified</code> - bytes received and 304 answers
+ * <br> <code>parse</code>, <code>parse.entries</code> - latency of feed parsing and parsed entries
+ * <br> <code>cache.hits</code>, <code>cache.misses</code> - rate cache lookups
+ * <br> <code>lookups</code>, <code>conversions</code> - currency pairs looked up and amounts converted
+ * <br> <code>errors</code> - failures logged while answering
+ * <br> Example: <code>CurrencyParser.setMetrics(new Metrics())</code>
+ *
+ * @author ShinyDove
+ */
+public class Metrics {
+
+    private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * Add one to a counter
+     *
+     * @param name the counter name, created on first use
+     */
+    public void increment(String name) {
+        counter(name).increment();
+    }
+
+    /**
+     * Add to a counter
+     *
+     * @param name the counter name, created on first use
+     * @param count the count to add
+     */
+    public void add(String name, long count) {
+        counter(name).add(count);
+    }
+
+    /**
+     * Record a latency
+     *
+     * @param name the latency name, created on first use
+     * @param nanos the latency in nanoseconds
+     */
+    public void record(String name, long nanos) {
+        latency(name).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Record a failed call of a latency, which has no latency itself
+     *
+     * @param name the latency name, created on first use
+     */
+    public void recordFailure(String name) {
+        latency(name).recordFailure();
+    }
+
+    /**
+     * Get a counter
+     *
+     * @param name the counter name, created on first use
+     * @return the counter
+     */
+    public LongAdder counter(String name) {
+        LongAdder counter = counters.get(name);
+        return (counter != null) ? counter : counters.computeIfAbsent(name, (String key) -> new LongAdder());
+    }
+
+    /**
+     * Get a latency histogram
+     *
+     * @param name the latency name, created on first use
+     * @return the latency histogram
+     */
+    public LatencyHistogram latency(String name) {
+        LatencyHistogram latency = latencies.get(name);
+        return (latency != null) ? latency : latencies.computeIfAbsent(name, (String key) -> new LatencyHistogram());
+    }
+
+    /**
+     * Get the current value of every counter
+     *
+     * @return unmodifiable map of counter name to its value, in name order
+     */
+    public SortedMap<String, Long> getCounters() {
+        SortedMap<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            values.put(counter.getKey(), counter.getValue().sum());
+        }
+        return Collections.unmodifiableSortedMap(values);
+    }
+
+    /**
+     * Get every latency histogram
+     *
+     * @return unmodifiable map of latency name to its live histogram, in name
+     * order
+     */
+    public SortedMap<String, LatencyHistogram> getLatencies() {
+        return Collections.unmodifiableSortedMap(new TreeMap<>(latencies));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder str = new StringBuilder();
+        for (Map.Entry<String, Long> counter : getCounters().entrySet()) {
+            str.append(counter.getKey()).append(": ").append(counter.getValue()).append(System.lineSeparator());
+        }
+        for (Map.Entry<String, LatencyHistogram> latency : getLatencies().entrySet()) {
+            str.append(latency.getKey()).append(": ").append(latency.getValue()).append(System.lineSeparator());
+        }
+        return str.toString();
+    }
+}
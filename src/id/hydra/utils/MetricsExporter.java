@@ -0,0 +1,35 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+/**
+ * Publisher of Metrics to a monitoring system, either by writing their
+ * current values (e.g. the Prometheus text format) or by exposing them live
+ * (e.g. a JMX MBean).
+ * <br> Example: <code>new PrometheusMetricsExporter(System.err).export(CurrencyParser.getMetrics())</code>
+ *
+ * @author ShinyDove
+ */
+public interface MetricsExporter {
+
+    /**
+     * Publish metrics
+     *
+     * @param metrics the metrics to publish
+     * @throws Exception if the metrics could not be published
+     */
+    void export(Metrics metrics) throws Exception;
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Fetch the currency exchange lists of many base currencies concurrently from
+ * the rate source of CurrencyParser. Fetches run on virtual threads when the
+ * JDK has them (Java 21 or newer) and on a bounded thread pool otherwise, at
+ * most maxConcurrency at a time. Every floatrates fetch is aborted once it
+ * takes longer than the request timeout, and a base of any source that is
+ * still not fetched once its turn has had the timeout is reported as failed.
+ * <br> Example: <code>new MultiBaseFetcher(16, 10, TimeUnit.SECONDS).fetchAll(Arrays.asList("usd", "eur", "idr"))</code>
+ *
+ * @author ShinyDove
+ */
+public class MultiBaseFetcher {
+
+    /**
+     * Outcome of a bulk fetch: the currency exchange lists of every base that
+     * was fetched, and the failure of every base that was not
+     */
+    public static class Result {
+
+        private final Map<String, List<Currency>> rates;
+        private final Map<String, Exception> failures;
+
+        Result(Map<String, List<Currency>> rates, Map<String, Exception> failures) {
+            this.rates = Collections.unmodifiableMap(rates);
+            this.failures = Collections.unmodifiableMap(failures);
+        }
+
+        /**
+         * Get the fetched currency exchange lists
+         *
+         * @return map of base currency code (upper case) to its currency
+         * exchange list, in request order
+         */
+        public Map<String, List<Currency>> getRates() {
+            return rates;
+        }
+
+        /**
+         * Get the bases which could not be fetched
+         *
+         * @return map of base currency code (upper case) to its failure
+         */
+        public Map<String, Exception> getFailures() {
+            return failures;
+        }
+
+        /**
+         * Check whether every requested base was fetched
+         *
+         * @return true if there were no failures
+         */
+        public boolean isComplete() {
+            return failures.isEmpty();
+        }
+    }
+
+    private final int maxConcurrency;
+    private final int timeoutMillis;
+
+    /**
+     * Create a bulk fetcher
+     *
+     * @param maxConcurrency the maximum count of fetches running at a time
+     * @param timeout the time limit of a single fetch (connect, download and
+     * parse)
+     * @param unit the time unit of timeout
+     */
+    public MultiBaseFetcher(int maxConcurrency, long timeout, TimeUnit unit) {
+        if (maxConcurrency <= 0 || timeout <= 0) {
+            throw new IllegalArgumentException("Concurrency and timeout must be positive");
+        }
+        this.maxConcurrency = maxConcurrency;
+        this.timeoutMillis = (int) Math.min(Integer.MAX_VALUE, unit.toMillis(timeout));
+    }
+
+    /**
+     * Fetch the currency exchange lists of every base currency concurrently.
+     * A failing base does not stop the others, see Result.getFailures(). Every
+     * fetch is given the timeout once it may run, so the whole call returns
+     * within the timeout times the count of bases per maxConcurrency.
+     *
+     * @param baseCodes base currency codes to fetch
+     * @return fetched lists and failures
+     * @throws InterruptedException if interrupted while waiting for fetches
+     */
+    public Result fetchAll(Collection<String> baseCodes) throws InterruptedException {
+        final Semaphore permits = new Semaphore(maxConcurrency);
+        final ScheduledExecutorService watchdog = new ScheduledThreadPoolExecutor(1, daemonThreads("jsoncurrency-fetch-watchdog"));
+        ExecutorService executor = newExecutor();
+
+        Map<String, Future<List<Currency>>> fetches = new LinkedHashMap<>();
+        try {
+            for (String baseCode : baseCodes) {
+                final String code = baseCode.toUpperCase();
+                if (fetches.containsKey(code)) {
+                    continue;
+                }
+                fetches.put(code, executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return fetch(code, watchdog);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+
+            // Fetches run in waves of maxConcurrency, each wave allowed the timeout of one fetch
+            long waves = (fetches.size() + maxConcurrency - 1) / maxConcurrency;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) * waves;
+
+            Map<String, List<Currency>> rates = new LinkedHashMap<>();
+            Map<String, Exception> failures = new LinkedHashMap<>();
+            for (Map.Entry<String, Future<List<Currency>>> fetch : fetches.entrySet()) {
+                try {
+                    rates.put(fetch.getKey(), fetch.getValue().get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    failures.put(fetch.getKey(), (cause instanceof Exception) ? (Exception) cause : e);
+                } catch (TimeoutException e) {
+                    // Sources other than floatrates cannot be disconnected, so stop waiting for them
+                    fetch.getValue().cancel(true);
+                    failures.put(fetch.getKey(), new TimeoutException("Fetching " + fetch.getKey() + " took longer than " + timeoutMillis + "ms"));
+                }
+            }
+            return new Result(rates, failures);
+        } finally {
+            executor.shutdownNow();
+            watchdog.shutdownNow();
+        }
+    }
+
+    /**
+     * Fetch a single base, disconnecting it once the timeout has passed if it
+     * is fetched over HTTP
+     */
+    private List<Currency> fetch(String code, final ScheduledExecutorService watchdog) throws Exception {
+        RateSource source = CurrencyParser.getRateSource();
+        if (!(source instanceof FloatratesRateSource)) {
+            return source.fetch(code);
+        }
+
+        final List<ScheduledFuture<?>> abort = new ArrayList<>(1);
+        try {
+            return ((FloatratesRateSource) source).fetch(code, (HttpURLConnection connection) -> {
+                connection.setConnectTimeout(timeoutMillis);
+                connection.setReadTimeout(timeoutMillis);
+                abort.add(watchdog.schedule(connection::disconnect, timeoutMillis, TimeUnit.MILLISECONDS));
+            });
+        } catch (IOException e) {
+            if (!abort.isEmpty() && abort.get(0).isDone()) {
+                SocketTimeoutException timeout = new SocketTimeoutException("Fetching " + code + " took longer than " + timeoutMillis + "ms");
+                timeout.initCause(e);
+                throw timeout;
+            }
+            throw e;
+        } finally {
+            if (!abort.isEmpty()) {
+                abort.get(0).cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Use a virtual thread per fetch when running on Java 21 or newer, or a
+     * bounded pool of daemon threads otherwise
+     */
+    private ExecutorService newExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(maxConcurrency, daemonThreads("jsoncurrency-fetch"));
+        }
+    }
+
+    private static ThreadFactory daemonThreads(final String name) {
+        return (Runnable task) -> {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
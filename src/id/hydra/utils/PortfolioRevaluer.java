@@ -0,0 +1,404 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * Value a portfolio of positions held in many currencies in one reporting
+ * currency, incrementally. Positions are summed per currency into striped
+ * adders as they are added, so any count of positions costs one multiply per
+ * currency to value, and a revaluation only recomputes the currencies whose
+ * rate or holding changed since the last one. Rates come from a base currency
+ * table and are updated from a whole table or from the deltas of a RateDiffer,
+ * the value of an amount in currency X being amount * rate(R) / rate(X) with
+ * both rates of the base table.
+ * <br> Example: <code>differ.addListener(PortfolioRevaluer.load("usd", "idr"))</code>
+ *
+ * @author ShinyDove
+ */
+public class PortfolioRevaluer implements RateDeltaListener {
+
+    /**
+     * The summed positions of one currency
+     */
+    private static final class Holding {
+
+        final DoubleAdder amount = new DoubleAdder();
+        final LongAdder positions = new LongAdder();
+        // Set after every add, cleared by revalue() before it reads the sum
+        volatile boolean dirty;
+    }
+
+    /**
+     * The smallest count of positions summed by a single task of addPositions()
+     */
+    private static final int MIN_SPLIT_SIZE = 1 << 16;
+
+    private final String baseCurrencyCode;
+    private final int baseId, reportingId;
+    private final Object growLock = new Object();
+    private volatile Holding[] holdings;
+
+    // Guarded by this: rates of the base table and the values of the last revaluation
+    private double[] rates, valuedAmounts, values;
+    private boolean[] rateChanged;
+    private boolean allChanged = true;
+    private int lastRecomputed;
+    private volatile double total;
+    private volatile boolean complete = true;
+
+    /**
+     * Create a revaluer with no positions. Entries of the table whose code is
+     * not three letters are skipped, see CurrencyCode.isValid().
+     *
+     * @param baseCurrencyCode the base (local) currency code of the table
+     * @param baseTable Currency exchange list of the base currency
+     * @param reportingCurrencyCode the currency to value the portfolio in
+     */
+    public PortfolioRevaluer(String baseCurrencyCode, List<Currency> baseTable, String reportingCurrencyCode) {
+        this.baseId = CurrencyCode.register(baseCurrencyCode);
+        this.baseCurrencyCode = CurrencyCode.codeOf(baseId);
+        this.reportingId = CurrencyCode.register(reportingCurrencyCode);
+        int size = CurrencyCode.size();
+        holdings = new Holding[size];
+        rates = new double[size];
+        Arrays.fill(rates, Double.NaN);
+        valuedAmounts = new double[size];
+        values = new double[size];
+        rateChanged = new boolean[size];
+        updateRates(baseTable);
+    }
+
+    /**
+     * Create a revaluer with the current table of a base currency
+     *
+     * @param baseCurrencyCode the base currency code
+     * @param reportingCurrencyCode the currency to value the portfolio in
+     * @return revaluer with no positions
+     * @throws Exception if any fetch or parse failure occurred
+     */
+    public static PortfolioRevaluer load(String baseCurrencyCode, String reportingCurrencyCode) throws Exception {
+        return new PortfolioRevaluer(baseCurrencyCode, CurrencyParser.getCurrencyExchangeLists(baseCurrencyCode), reportingCurrencyCode);
+    }
+
+    /**
+     * Get the base currency code of the rates
+     *
+     * @return upper case base currency code
+     */
+    public String getBaseCurrencyCode() {
+        return baseCurrencyCode;
+    }
+
+    /**
+     * Get the reporting currency code
+     *
+     * @return upper case currency code the portfolio is valued in
+     */
+    public String getReportingCurrencyCode() {
+        return CurrencyCode.codeOf(reportingId);
+    }
+
+    /**
+     * Add a position, or remove one with a negative amount. Safe to call from
+     * many threads at once and during revalue().
+     *
+     * @param currencyCode the currency code of the position
+     * @param amount the amount in that currency
+     */
+    public void addPosition(String currencyCode, double amount) {
+        addPosition(CurrencyCode.register(currencyCode), amount);
+    }
+
+    /**
+     * Add a position, see addPosition(String, double)
+     *
+     * @param currencyId the CurrencyCode id of the position currency
+     * @param amount the amount in that currency
+     */
+    public void addPosition(int currencyId, double amount) {
+        Holding holding = holding(currencyId);
+        holding.amount.add(amount);
+        holding.positions.increment();
+        if (!holding.dirty) {
+            holding.dirty = true; // skip the write while already set, the flag is shared by every thread
+        }
+    }
+
+    /**
+     * Add many positions, summed per currency over the common fork-join pool
+     * before they reach the shared adders
+     *
+     * @param currencyIds the CurrencyCode id of every position currency
+     * @param amounts the amount of every position
+     */
+    public void addPositions(final int[] currencyIds, final double[] amounts) {
+        if (currencyIds.length != amounts.length) {
+            throw new IllegalArgumentException("Expected " + currencyIds.length + " amounts but got " + amounts.length);
+        }
+        final int size = currencyIds.length;
+        final int splitSize = Math.max(MIN_SPLIT_SIZE, size / (Runtime.getRuntime().availableProcessors() * 4));
+        IntStream range = IntStream.range(0, (size + splitSize - 1) / splitSize);
+        (size < 2 * MIN_SPLIT_SIZE ? range : range.parallel()).forEach((int split) -> {
+            int start = split * splitSize, end = Math.min(size, start + splitSize);
+            double[] sums = new double[CurrencyCode.size()];
+            long[] counts = new long[sums.length];
+            for (int i = start; i < end; i++) {
+                sums[currencyIds[i]] += amounts[i];
+                counts[currencyIds[i]]++;
+            }
+            for (int id = 0; id < sums.length; id++) {
+                if (counts[id] != 0) {
+                    Holding holding = holding(id);
+                    holding.amount.add(sums[id]);
+                    holding.positions.add(counts[id]);
+                    holding.dirty = true;
+                }
+            }
+        });
+    }
+
+    /**
+     * Replace the rates with a new table of the base currency, marking the
+     * currencies whose rate changed for the next revaluation. Entries whose
+     * code is not three letters are skipped, see CurrencyCode.isValid().
+     *
+     * @param baseTable Currency exchange list of the base currency
+     */
+    public synchronized void updateRates(List<Currency> baseTable) {
+        double[] fresh = new double[Math.max(rates.length, CurrencyCode.size())];
+        Arrays.fill(fresh, Double.NaN);
+        for (Currency curr : baseTable) {
+            if (!CurrencyCode.isValid(curr.getTargetCurrencyCode())) {
+                continue;
+            }
+            int id = CurrencyCode.register(curr.getTargetCurrencyCode());
+            if (id >= fresh.length) {
+                fresh = grow(fresh, id);
+            }
+            if (Double.isNaN(fresh[id])) {
+                fresh[id] = curr.getExchangeRate(); // the first entry of a code wins
+            }
+        }
+        fresh[baseId] = 1;
+        ensureCapacity(fresh.length);
+        for (int id = 0; id < fresh.length; id++) {
+            setRate(id, fresh[id]);
+        }
+    }
+
+    /**
+     * Apply the rate changes of the base currency table and revalue. Deltas
+     * of other bases are ignored.
+     *
+     * @param delta the changed pairs
+     */
+    @Override
+    public void onRateDelta(RateDelta delta) {
+        if (!baseCurrencyCode.equals(delta.getBaseCurrencyCode())) {
+            return;
+        }
+        synchronized (this) {
+            ensureCapacity(CurrencyCode.size());
+            for (RateDelta.Change change : delta.getChanges()) {
+                int id = CurrencyCode.idOf(change.getTargetCurrencyCode());
+                if (id >= 0 && id != baseId) {
+                    setRate(id, change.getRate());
+                }
+            }
+            revalue();
+        }
+    }
+
+    /**
+     * Recompute the value of every currency whose rate or holding changed
+     * since the last revaluation, and the total
+     *
+     * @return total value of the portfolio in the reporting currency
+     */
+    public synchronized double revalue() {
+        Metrics metrics = CurrencyParser.getMetrics();
+        long start = (metrics != null) ? System.nanoTime() : 0;
+        Holding[] held = holdings;
+        ensureCapacity(held.length);
+        boolean all = allChanged;
+        allChanged = false;
+        double reportingRate = rates[reportingId];
+        int recomputed = 0;
+        double sum = 0;
+        boolean priced = true;
+        for (int id = 0; id < held.length; id++) {
+            Holding holding = held[id];
+            if (holding == null) {
+                continue;
+            }
+            boolean moved = holding.dirty;
+            if (moved) {
+                holding.dirty = false;
+                valuedAmounts[id] = holding.amount.sum();
+            }
+            if (all || moved || rateChanged[id]) {
+                rateChanged[id] = false;
+                values[id] = valuedAmounts[id] * (reportingRate / rates[id]);
+                recomputed++;
+            }
+            if (Double.isNaN(values[id])) {
+                priced = false;
+            } else {
+                sum += values[id];
+            }
+        }
+        lastRecomputed = recomputed;
+        total = sum;
+        complete = priced;
+        if (metrics != null) {
+            metrics.record("revalue", System.nanoTime() - start);
+        }
+        return sum;
+    }
+
+    /**
+     * Get the total of the last revaluation
+     *
+     * @return total value in the reporting currency, leaving out currencies
+     * without a rate
+     */
+    public double getTotal() {
+        return total;
+    }
+
+    /**
+     * Check whether every held currency had a rate in the last revaluation
+     *
+     * @return false if some currencies were left out of the total
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Get the value of the holding of one currency in the last revaluation
+     *
+     * @param currencyCode the currency code of the holding
+     * @return value in the reporting currency, 0 if nothing is held, NaN if
+     * the currency has no rate
+     */
+    public synchronized double getValue(String currencyCode) {
+        int id = CurrencyCode.idOf(currencyCode);
+        Holding[] held = holdings;
+        return (id >= 0 && id < held.length && held[id] != null && id < values.length) ? values[id] : 0;
+    }
+
+    /**
+     * Get the current sum of the positions of one currency
+     *
+     * @param currencyCode the currency code of the holding
+     * @return summed amount in that currency
+     */
+    public double getHolding(String currencyCode) {
+        int id = CurrencyCode.idOf(currencyCode);
+        Holding[] held = holdings;
+        return (id >= 0 && id < held.length && held[id] != null) ? held[id].amount.sum() : 0;
+    }
+
+    /**
+     * Get the count of positions added
+     *
+     * @return position count, including removals
+     */
+    public long getPositionCount() {
+        long count = 0;
+        for (Holding holding : holdings) {
+            if (holding != null) {
+                count += holding.positions.sum();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the count of currencies recomputed by the last revaluation
+     *
+     * @return recomputed currency count
+     */
+    public synchronized int getLastRecomputedCount() {
+        return lastRecomputed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PortfolioRevaluer[%s in %s, total=%f, positions=%d]", baseCurrencyCode, getReportingCurrencyCode(), total, getPositionCount());
+    }
+
+    private Holding holding(int currencyId) {
+        Holding[] held = holdings;
+        if (currencyId < held.length && held[currencyId] != null) {
+            return held[currencyId];
+        }
+        synchronized (growLock) {
+            held = holdings;
+            if (currencyId >= held.length) {
+                held = Arrays.copyOf(held, Math.max(currencyId + 1, CurrencyCode.size()));
+            }
+            if (held[currencyId] == null) {
+                held[currencyId] = new Holding();
+            }
+            holdings = held;
+            return held[currencyId];
+        }
+    }
+
+    /**
+     * Grow the revaluation arrays to hold an id below size, guarded by this
+     */
+    private void ensureCapacity(int size) {
+        if (rates.length >= size) {
+            return;
+        }
+        int length = rates.length;
+        rates = Arrays.copyOf(rates, size);
+        Arrays.fill(rates, length, size, Double.NaN);
+        valuedAmounts = Arrays.copyOf(valuedAmounts, size);
+        values = Arrays.copyOf(values, size);
+        rateChanged = Arrays.copyOf(rateChanged, size);
+    }
+
+    /**
+     * Store the rate of a currency, guarded by this
+     */
+    private void setRate(int id, double rate) {
+        if (Double.compare(rates[id], rate) == 0) {
+            return;
+        }
+        rates[id] = rate;
+        rateChanged[id] = true;
+        if (id == reportingId) {
+            allChanged = true; // every value is converted through it
+        }
+    }
+
+    private static double[] grow(double[] array, int id) {
+        int length = array.length;
+        double[] grown = Arrays.copyOf(array, Math.max(id + 1, length * 2));
+        Arrays.fill(grown, length, grown.length, Double.NaN);
+        return grown;
+    }
+}
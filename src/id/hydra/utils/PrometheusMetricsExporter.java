@@ -0,0 +1,78 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write the current values of Metrics in the Prometheus text exposition
+ * format. Names are prefixed with "jsoncurrency_" and their dots become
+ * underscores; counters end in "_total", and latencies are written as
+ * summaries in seconds with 0.5, 0.95 and 0.99 quantiles plus a failure
+ * counter.
+ * <br> Example: <code>new PrometheusMetricsExporter(System.err).export(CurrencyParser.getMetrics())</code>
+ *
+ * @author ShinyDove
+ */
+public class PrometheusMetricsExporter implements MetricsExporter {
+
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+    private final PrintStream out;
+
+    /**
+     * Create an exporter
+     *
+     * @param out the stream to write into
+     */
+    public PrometheusMetricsExporter(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void export(Metrics metrics) {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Long> counter : metrics.getCounters().entrySet()) {
+            String name = nameOf(counter.getKey()) + "_total";
+            text.append("# TYPE ").append(name).append(" counter\n");
+            text.append(name).append(' ').append(counter.getValue()).append('\n');
+        }
+        for (Map.Entry<String, LatencyHistogram> latency : metrics.getLatencies().entrySet()) {
+            String name = nameOf(latency.getKey()) + "_seconds";
+            LatencyHistogram histogram = latency.getValue();
+            long count = histogram.getCount();
+            text.append("# TYPE ").append(name).append(" summary\n");
+            for (double quantile : QUANTILES) {
+                text.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                        .append(histogram.getPercentile(quantile * 100, TimeUnit.MICROSECONDS) / 1e6).append('\n');
+            }
+            text.append(name).append("_sum ").append(histogram.getMean(TimeUnit.SECONDS) * count).append('\n');
+            text.append(name).append("_count ").append(count).append('\n');
+
+            String failures = nameOf(latency.getKey()) + "_failures_total";
+            text.append("# TYPE ").append(failures).append(" counter\n");
+            text.append(failures).append(' ').append(histogram.getFailureCount()).append('\n');
+        }
+        out.print(text);
+        out.flush();
+    }
+
+    private static String nameOf(String metric) {
+        return "jsoncurrency_" + metric.replaceAll("[^A-Za-z0-9_]", "_");
+    }
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory cache of currency exchange lists keyed by base (source) currency
+ * code. Entries expire after a configurable time-to-live, the least recently
+ * used base is evicted once the cache is full, and concurrent callers missing
+ * the same base share a single load.
+ * <br> Example: <code>CurrencyParser.setRateCache(new RateCache(1, TimeUnit.HOURS, 200))</code>
+ *
+ * @author ShinyDove
+ */
+public class RateCache {
+
+    /**
+     * Loads the currency exchange list of a base currency on a cache miss
+     */
+    public interface Loader {
+
+        /**
+         * Load the currency exchange list of a base currency
+         *
+         * @param sourceCurrencyCode the base currency code (upper case)
+         * @return Currency exchange list of the base currency
+         * @throws Exception if any fetch or parse failure occurred
+         */
+        List<Currency> load(String sourceCurrencyCode) throws Exception;
+    }
+
+    private static final class CachedTable {
+
+        final List<Currency> currencies;
+        final long loadedAt;
+
+        CachedTable(List<Currency> currencies, long loadedAt) {
+            this.currencies = currencies;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private final long ttlNanos;
+    private final int maxEntries;
+    private final LinkedHashMap<String, CachedTable> entries;
+    private final ConcurrentHashMap<String, FutureTask<List<Currency>>> loading = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder(), loads = new LongAdder(),
+            loadFailures = new LongAdder(), evictions = new LongAdder(), loadTimeNanos = new LongAdder();
+
+    /**
+     * Create a rate cache
+     *
+     * @param ttl how long a loaded base currency table stays fresh
+     * @param unit the time unit of ttl
+     * @param maxEntries the maximum count of base currency tables to keep
+     */
+    public RateCache(long ttl, TimeUnit unit, int maxEntries) {
+        if (ttl <= 0 || maxEntries <= 0) {
+            throw new IllegalArgumentException("Cache TTL and size must be positive");
+        }
+        this.ttlNanos = unit.toNanos(ttl);
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, CachedTable>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedTable> eldest) {
+                if (size() > RateCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get the currency exchange list of a base currency, loading it if it is
+     * not cached or has expired. Concurrent callers asking for the same base
+     * wait for the same load.
+     *
+     * @param sourceCurrencyCode the base currency code
+     * @param loader the loader to call on a cache miss
+     * @return unmodifiable Currency exchange list of the base currency
+     * @throws Exception if the load failed
+     */
+    public List<Currency> get(String sourceCurrencyCode, final Loader loader) throws Exception {
+        final String key = sourceCurrencyCode.toUpperCase();
+        List<Currency> cached = getIfPresent(key);
+        Metrics metrics = CurrencyParser.getMetrics();
+        if (cached != null) {
+            hits.increment();
+            if (metrics != null) {
+                metrics.increment("cache.hits");
+            }
+            return cached;
+        }
+        misses.increment();
+        if (metrics != null) {
+            metrics.increment("cache.misses");
+        }
+
+        // Single-flight load: only the first caller runs the loader
+        FutureTask<List<Currency>> task = new FutureTask<>(() -> load(key, loader));
+        FutureTask<List<Currency>> running = loading.putIfAbsent(key, task);
+        if (running == null) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                loading.remove(key, task);
+            }
+        }
+
+        try {
+            return running.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Get the currency exchange list of a base currency only if it is cached
+     * and still fresh. Does not count as a hit or miss.
+     *
+     * @param sourceCurrencyCode the base currency code
+     * @return unmodifiable Currency exchange list, or null if absent or expired
+     */
+    public List<Currency> getIfPresent(String sourceCurrencyCode) {
+        String key = sourceCurrencyCode.toUpperCase();
+        synchronized (entries) {
+            CachedTable entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            } else if (System.nanoTime() - entry.loadedAt >= ttlNanos) {
+                entries.remove(key);
+                return null;
+            }
+            return entry.currencies;
+        }
+    }
+
+    /**
+     * Store a currency exchange list of a base currency, e.g. one fetched
+     * outside of the cache
+     *
+     * @param sourceCurrencyCode the base currency code
+     * @param currencies Currency exchange list of the base currency
+     */
+    public void put(String sourceCurrencyCode, List<Currency> currencies) {
+        String key = sourceCurrencyCode.toUpperCase();
+        CachedTable entry = new CachedTable(Collections.unmodifiableList(currencies), System.nanoTime());
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Remove a base currency from the cache so the next call loads it again
+     *
+     * @param sourceCurrencyCode the base currency code
+     */
+    public void invalidate(String sourceCurrencyCode) {
+        synchronized (entries) {
+            entries.remove(sourceCurrencyCode.toUpperCase());
+        }
+    }
+
+    /**
+     * Remove every base currency from the cache
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    /**
+     * Get the count of cached base currencies, including expired ones not yet
+     * removed
+     *
+     * @return count of cached base currencies
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * Get the count of calls served from the cache
+     *
+     * @return cache hit count
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the count of calls not served from the cache (callers sharing a
+     * single load each count as a miss)
+     *
+     * @return cache miss count
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the count of loader calls, i.e. requests made to the upstream
+     *
+     * @return load count
+     */
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    /**
+     * Get the count of loader calls which failed
+     *
+     * @return load failure count
+     */
+    public long getLoadFailureCount() {
+        return loadFailures.sum();
+    }
+
+    /**
+     * Get the count of base currencies evicted because the cache was full
+     *
+     * @return eviction count
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Get the total time spent in loader calls
+     *
+     * @param unit the time unit to return
+     * @return total load time
+     */
+    public long getTotalLoadTime(TimeUnit unit) {
+        return unit.convert(loadTimeNanos.sum(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the ratio of hits over all calls
+     *
+     * @return hit rate between 0 and 1 (1 if there were no calls)
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum(), requestCount = hitCount + misses.sum();
+        return (requestCount == 0) ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RateCache[size=%d, hits=%d, misses=%d, loads=%d, loadFailures=%d, evictions=%d, loadTime=%dms]",
+                size(), getHitCount(), getMissCount(), getLoadCount(), getLoadFailureCount(), getEvictionCount(),
+                getTotalLoadTime(TimeUnit.MILLISECONDS));
+    }
+
+    private List<Currency> load(String key, Loader loader) throws Exception {
+        // Another load may have completed since the caller missed
+        List<Currency> fresh = getIfPresent(key);
+        if (fresh != null) {
+            return fresh;
+        }
+        loads.increment();
+        long start = System.nanoTime();
+        try {
+            List<Currency> currencies = Collections.unmodifiableList(loader.load(key));
+            long loadedAt = System.nanoTime();
+            synchronized (entries) {
+                entries.put(key, new CachedTable(currencies, loadedAt));
+            }
+            return currencies;
+        } catch (Exception e) {
+            loadFailures.increment();
+            throw e;
+        } finally {
+            loadTimeNanos.add(System.nanoTime() - start);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The pairs of one base currency which changed between two fetched tables,
+ * published by RateDiffer. A change with a NaN previous rate is a currency new
+ * to the table, and one with a NaN rate is a currency gone from it. Deltas of
+ * the same base are published in sequence order, so applying them in turn
+ * keeps a copy of the table up to date.
+ * <br> Example: <code>for (RateDelta.Change change : delta.getChanges()) cache.put(delta.getBaseCurrencyCode(), change.getTargetCurrencyCode(), change.getRate())</code>
+ *
+ * @author ShinyDove
+ */
+public final class RateDelta {
+
+    /**
+     * The rate change of one pair
+     */
+    public static final class Change {
+
+        private final String targetCurrencyCode;
+        private final double previousRate, rate;
+
+        Change(String targetCurrencyCode, double previousRate, double rate) {
+            this.targetCurrencyCode = targetCurrencyCode;
+            this.previousRate = previousRate;
+            this.rate = rate;
+        }
+
+        /**
+         * Get the target currency code
+         *
+         * @return upper case target currency code
+         */
+        public String getTargetCurrencyCode() {
+            return targetCurrencyCode;
+        }
+
+        /**
+         * Get the rate published before this change
+         *
+         * @return previous exchange rate, NaN if the currency was not in the
+         * table
+         */
+        public double getPreviousRate() {
+            return previousRate;
+        }
+
+        /**
+         * Get the new rate
+         *
+         * @return exchange rate, NaN if the currency left the table
+         */
+        public double getRate() {
+            return rate;
+        }
+
+        /**
+         * Check whether the currency is new to the table
+         *
+         * @return true if there was no previous rate
+         */
+        public boolean isAdded() {
+            return Double.isNaN(previousRate);
+        }
+
+        /**
+         * Check whether the currency left the table
+         *
+         * @return true if there is no new rate
+         */
+        public boolean isRemoved() {
+            return Double.isNaN(rate);
+        }
+
+        /**
+         * Get the relative change of the rate
+         *
+         * @return (rate - previousRate) / previousRate, NaN if added or removed
+         */
+        public double getRelativeChange() {
+            return (rate - previousRate) / previousRate;
+        }
+
+        @Override
+        public String toString() {
+            return targetCurrencyCode + " " + previousRate + " -> " + rate;
+        }
+    }
+
+    private final String baseCurrencyCode;
+    private final long sequence, fetchedAt;
+    private final List<Change> changes;
+    private final int unchangedCount;
+
+    RateDelta(String baseCurrencyCode, long sequence, long fetchedAt, List<Change> changes, int unchangedCount) {
+        this.baseCurrencyCode = baseCurrencyCode;
+        this.sequence = sequence;
+        this.fetchedAt = fetchedAt;
+        this.changes = Collections.unmodifiableList(changes);
+        this.unchangedCount = unchangedCount;
+    }
+
+    /**
+     * Get the base currency code
+     *
+     * @return upper case base currency code
+     */
+    public String getBaseCurrencyCode() {
+        return baseCurrencyCode;
+    }
+
+    /**
+     * Get the sequence number, increasing with every delta of the differ
+     *
+     * @return sequence number, starting at 1
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Get the time the table was fetched
+     *
+     * @return milliseconds since the epoch
+     */
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+
+    /**
+     * Get the changed pairs
+     *
+     * @return unmodifiable list of changes in table order, removed currencies
+     * last
+     */
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    /**
+     * Get the count of pairs in the new table which did not move beyond the
+     * threshold
+     *
+     * @return unchanged pair count
+     */
+    public int getUnchangedCount() {
+        return unchangedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "RateDelta #" + sequence + " " + baseCurrencyCode + ": " + changes.size() + " changed, " + unchangedCount + " unchanged";
+    }
+}
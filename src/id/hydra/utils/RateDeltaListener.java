@@ -0,0 +1,35 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+/**
+ * Subscriber of the rate changes published by RateDiffer
+ * <br> Example: <code>differ.addListener((RateDelta delta) -&gt; System.out.println(delta))</code>
+ *
+ * @author ShinyDove
+ */
+@FunctionalInterface
+public interface RateDeltaListener {
+
+    /**
+     * Apply the changes of a fetched table. Called on the fetching thread
+     * while the base is locked, so deltas of a base arrive in order; hand slow
+     * work to another thread.
+     *
+     * @param delta the changed pairs, never empty
+     */
+    void onRateDelta(RateDelta delta);
+}
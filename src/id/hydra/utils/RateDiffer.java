@@ -0,0 +1,216 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compare every fetched table with the rates published before for the same
+ * base currency, and publish only the pairs which moved more than a relative
+ * threshold (plus currencies added to or gone from the table) as a RateDelta
+ * to the listeners. Pairs are compared with the rate last published, not the
+ * rate last fetched, so a rate drifting slowly is published once its total
+ * move passes the threshold. The first table of a base is published whole.
+ * Published rates are kept per base in a primitive array indexed by
+ * CurrencyCode id.
+ * <br> Example: <code>CurrencyParser.setRateDiffer(new RateDiffer(0.0001))</code>
+ *
+ * @author ShinyDove
+ */
+public class RateDiffer {
+
+    /**
+     * The published rates of one base, NaN for currencies not in its table
+     */
+    private static final class BaseRates {
+
+        double[] published = new double[0];
+        boolean[] seen = new boolean[0];
+    }
+
+    private final double threshold;
+    private final ConcurrentHashMap<String, BaseRates> bases = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<RateDeltaListener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Create a differ
+     *
+     * @param threshold the relative move a rate needs to be published, e.g.
+     * 0.0001 for one basis point, 0 for any change
+     */
+    public RateDiffer(double threshold) {
+        if (!(threshold >= 0)) {
+            throw new IllegalArgumentException("Threshold must not be negative");
+        }
+        this.threshold = threshold;
+    }
+
+    /**
+     * Get the relative move a rate needs to be published
+     *
+     * @return threshold
+     */
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Subscribe to the deltas of every base
+     *
+     * @param listener the listener to call
+     */
+    public void addListener(RateDeltaListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unsubscribe a listener
+     *
+     * @param listener the listener to remove
+     */
+    public void removeListener(RateDeltaListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Compare a fetched table with the rates published before and publish the
+     * delta to the listeners, if anything moved. Entries whose code is not
+     * three letters are left out, see CurrencyCode.isValid().
+     *
+     * @param baseCurrencyCode the base currency code of the table
+     * @param currencies the fetched currency exchange list
+     * @param fetchedAt the time the table was fetched, milliseconds since the
+     * epoch
+     * @return the published delta, or null if no pair moved beyond the
+     * threshold
+     */
+    public RateDelta update(String baseCurrencyCode, List<Currency> currencies, long fetchedAt) {
+        String base = baseCurrencyCode.toUpperCase();
+        BaseRates rates = bases.computeIfAbsent(base, (String key) -> new BaseRates());
+        RateDelta delta;
+        synchronized (rates) {
+            int[] ids = new int[currencies.size()];
+            for (int i = 0; i < ids.length; i++) {
+                String code = currencies.get(i).getTargetCurrencyCode();
+                ids[i] = CurrencyCode.isValid(code) ? CurrencyCode.register(code) : CurrencyCode.UNKNOWN;
+            }
+            if (rates.published.length < CurrencyCode.size()) {
+                int length = rates.published.length;
+                rates.published = Arrays.copyOf(rates.published, CurrencyCode.size());
+                Arrays.fill(rates.published, length, rates.published.length, Double.NaN);
+                rates.seen = new boolean[rates.published.length];
+            }
+
+            double[] published = rates.published;
+            boolean[] seen = rates.seen;
+            List<RateDelta.Change> changes = new ArrayList<>();
+            int unchanged = 0;
+            for (int i = 0; i < ids.length; i++) {
+                int id = ids[i];
+                double rate = currencies.get(i).getExchangeRate();
+                if (id == CurrencyCode.UNKNOWN || seen[id] || Double.isNaN(rate)) {
+                    continue; // the first entry of a code wins
+                }
+                seen[id] = true;
+                double previous = published[id];
+                if (Double.isNaN(previous) || Math.abs(rate - previous) > threshold * Math.abs(previous)) {
+                    changes.add(new RateDelta.Change(CurrencyCode.codeOf(id), previous, rate));
+                    published[id] = rate;
+                } else {
+                    unchanged++;
+                }
+            }
+            for (int id = 0; id < published.length; id++) {
+                if (!seen[id] && !Double.isNaN(published[id])) {
+                    changes.add(new RateDelta.Change(CurrencyCode.codeOf(id), published[id], Double.NaN));
+                    published[id] = Double.NaN;
+                }
+                seen[id] = false;
+            }
+
+            if (changes.isEmpty()) {
+                return null;
+            }
+            delta = new RateDelta(base, sequence.incrementAndGet(), fetchedAt, changes, unchanged);
+            // Still locked, so the listeners get the deltas of a base in order
+            for (RateDeltaListener listener : listeners) {
+                try {
+                    listener.onRateDelta(delta);
+                } catch (RuntimeException e) {
+                    Logger.getLogger(RateDiffer.class.getName()).log(Level.WARNING, "Rate delta listener failed on " + delta, e);
+                }
+            }
+        }
+        return delta;
+    }
+
+    /**
+     * Compare the fetched tables of many bases, see update()
+     *
+     * @param currencyLists map of base currency code to its fetched currency
+     * exchange list
+     * @param fetchedAt the time the tables were fetched, milliseconds since
+     * the epoch
+     * @return the published deltas
+     */
+    public List<RateDelta> updateAll(Map<String, ? extends List<Currency>> currencyLists, long fetchedAt) {
+        List<RateDelta> deltas = new ArrayList<>();
+        for (Map.Entry<String, ? extends List<Currency>> table : currencyLists.entrySet()) {
+            RateDelta delta = update(table.getKey(), table.getValue(), fetchedAt);
+            if (delta != null) {
+                deltas.add(delta);
+            }
+        }
+        return deltas;
+    }
+
+    /**
+     * Get the rate last published for a pair
+     *
+     * @param baseCurrencyCode the base currency code
+     * @param targetCurrencyCode the target currency code
+     * @return published exchange rate, NaN if none was published
+     */
+    public double getPublishedRate(String baseCurrencyCode, String targetCurrencyCode) {
+        BaseRates rates = bases.get(baseCurrencyCode.toUpperCase());
+        int id = CurrencyCode.idOf(targetCurrencyCode);
+        if (rates == null || id < 0) {
+            return Double.NaN;
+        }
+        synchronized (rates) {
+            return (id < rates.published.length) ? rates.published[id] : Double.NaN;
+        }
+    }
+
+    /**
+     * Forget the published rates of a base, so its next table is published
+     * whole
+     *
+     * @param baseCurrencyCode the base currency code
+     */
+    public void reset(String baseCurrencyCode) {
+        bases.remove(baseCurrencyCode.toUpperCase());
+    }
+}
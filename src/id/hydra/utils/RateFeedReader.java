@@ -0,0 +1,543 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import org.json.JSONException;
+
+/**
+ * Streaming, pull-style reader for currency exchange JSON files (floatrates
+ * format). The feed is read straight from the InputStream in one pass using a
+ * reusable byte buffer, and every currency entry is emitted as a Currency
+ * object without building an intermediate String or JSONObject tree.
+ * <br> Example: <code>new RateFeedReader(url.openStream(), "usd").readAll()</code>
+ *
+ * @author ShinyDove
+ */
+public class RateFeedReader implements Closeable {
+
+    /**
+     * Size of the reusable read buffer
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * Field identifiers of a currency entry we care about
+     */
+    private static final int FIELD_OTHER = 0, FIELD_NAME = 1, FIELD_CODE = 2, FIELD_RATE = 3, FIELD_INVERSE_RATE = 4, FIELD_DATE = 5;
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private final StringBuilder text = new StringBuilder(64);
+    private String lastDate;
+    private long lastPublishedAt;
+    private final String sourceCurrencyCode;
+    private final boolean cleanNames;
+    private int position, limit;
+    private boolean started, finished;
+
+    /**
+     * Create a feed reader which cleans up currency names the same way as
+     * <code>CurrencyParser.getCurrencyExchangeLists</code> (tabs and
+     * "convertible " are removed).
+     *
+     * @param in the JSON feed stream
+     * @param sourceCurrencyCode the source (local) currency code of the feed
+     */
+    public RateFeedReader(InputStream in, String sourceCurrencyCode) {
+        this(in, sourceCurrencyCode, true);
+    }
+
+    /**
+     * Create a feed reader
+     *
+     * @param in the JSON feed stream
+     * @param sourceCurrencyCode the source (local) currency code of the feed
+     * @param cleanNames remove tabs and "convertible " from currency names?
+     */
+    public RateFeedReader(InputStream in, String sourceCurrencyCode, boolean cleanNames) {
+        this(in, sourceCurrencyCode, cleanNames, BUFFER_SIZE);
+    }
+
+    /**
+     * Create a feed reader with a read buffer of its own size, e.g. the size
+     * of a single entry
+     */
+    RateFeedReader(InputStream in, String sourceCurrencyCode, boolean cleanNames, int bufferSize) {
+        this.buffer = new byte[Math.max(1, Math.min(bufferSize, BUFFER_SIZE))];
+        this.in = in;
+        this.sourceCurrencyCode = sourceCurrencyCode.toUpperCase();
+        this.cleanNames = cleanNames;
+    }
+
+    /**
+     * Read the next currency entry from the feed
+     *
+     * @return the next Currency, or null if the feed has no more entries
+     * @throws IOException if the feed could not be read
+     * @throws JSONException if the feed is malformed
+     */
+    public Currency next() throws IOException {
+        if (!nextKey()) {
+            return null;
+        }
+        expectToken('{');
+        return readCurrency();
+    }
+
+    /**
+     * Read a lone currency entry, the object of a key without the key itself,
+     * e.g. an entry located through the index of a FeedArchive
+     *
+     * @return the Currency of the entry
+     * @throws IOException if the entry could not be read
+     * @throws JSONException if the entry is malformed
+     */
+    Currency nextEntry() throws IOException {
+        expectToken('{');
+        return readCurrency();
+    }
+
+    /**
+     * Scan the feed for a single currency key and stop reading as soon as its
+     * entry is closed. Entries before it are skipped without being decoded,
+     * and the bytes after it are never read, so the caller may drop the rest
+     * of the stream (or the connection) right away.
+     *
+     * @param targetCurrencyCode the currency code (feed key) to look for
+     * @return the Currency of the target code, or null if the feed has no such
+     * entry
+     * @throws IOException if the feed could not be read
+     * @throws JSONException if the feed is malformed
+     */
+    public Currency find(String targetCurrencyCode) throws IOException {
+        String key = targetCurrencyCode.toLowerCase();
+        while (nextKey()) {
+            if (contentEquals(text, key)) {
+                expectToken('{');
+                Currency curr = readCurrency();
+                finished = true;
+                return curr;
+            }
+            skipValue();
+        }
+        return null;
+    }
+
+    /**
+     * Read all remaining currency entries from the feed
+     *
+     * @return Currency exchange list of the feed
+     * @throws IOException if the feed could not be read
+     * @throws JSONException if the feed is malformed
+     */
+    public ArrayList<Currency> readAll() throws IOException {
+        ArrayList<Currency> currLists = new ArrayList<>();
+        Currency curr;
+        while ((curr = next()) != null) {
+            currLists.add(curr);
+        }
+        return currLists;
+    }
+
+    /**
+     * Close the underlying feed stream
+     *
+     * @throws IOException if the stream could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Move to the next top-level key and consume its colon, the key is left in
+     * the text buffer
+     *
+     * @return false if the feed has no more entries
+     */
+    private boolean nextKey() throws IOException {
+        if (finished) {
+            return false;
+        }
+        int c = nextToken();
+        if (!started) {
+            if (c != '{') {
+                throw syntaxError("A JSONObject text must begin with '{'");
+            }
+            started = true;
+            c = nextToken();
+        } else if (c == ',') {
+            c = nextToken();
+        } else if (c != '}') {
+            throw syntaxError("Expected a ',' or '}'");
+        }
+        if (c == '}') {
+            finished = true;
+            return false;
+        }
+
+        // Currency key ("usd": {...}), the entry itself holds the currency code
+        if (c != '"') {
+            throw syntaxError("A JSONObject text must contain a key");
+        }
+        readString();
+        expectToken(':');
+        return true;
+    }
+
+    /**
+     * Read a currency entry body, the opening brace is already consumed
+     */
+    private Currency readCurrency() throws IOException {
+        String name = null, code = null;
+        double rate = 0, inverseRate = 0;
+        long publishedAt = 0;
+        boolean hasRate = false, hasInverseRate = false;
+
+        int c = nextToken();
+        while (c != '}') {
+            if (c != '"') {
+                throw syntaxError("A JSONObject text must contain a key");
+            }
+            readString();
+            int field = fieldOf(text);
+            expectToken(':');
+            switch (field) {
+                case FIELD_NAME:
+                    readStringValue("name");
+                    if (cleanNames) {
+                        cleanName(text);
+                    }
+                    name = text.toString();
+                    break;
+                case FIELD_CODE:
+                    readStringValue("code");
+                    code = text.toString();
+                    break;
+                case FIELD_RATE:
+                    rate = readNumberValue("rate");
+                    hasRate = true;
+                    break;
+                case FIELD_INVERSE_RATE:
+                    inverseRate = readNumberValue("inverseRate");
+                    hasInverseRate = true;
+                    break;
+                case FIELD_DATE:
+                    publishedAt = readDateValue();
+                    break;
+                default:
+                    skipValue();
+            }
+            c = nextToken();
+            if (c == ',') {
+                c = nextToken();
+            } else if (c != '}') {
+                throw syntaxError("Expected a ',' or '}'");
+            }
+        }
+
+        if (name == null) {
+            throw notFound("name");
+        } else if (code == null) {
+            throw notFound("code");
+        } else if (!hasRate) {
+            throw notFound("rate");
+        } else if (!hasInverseRate) {
+            throw notFound("inverseRate");
+        }
+        return new Currency(name, sourceCurrencyCode, code, rate, inverseRate, publishedAt);
+    }
+
+    /**
+     * Read an RFC 1123 date such as "Fri, 16 Oct 2026 11:55:01 GMT". Every
+     * entry of a feed usually has the same date, so it is only parsed when it
+     * differs from the previous one.
+     *
+     * @return epoch milliseconds, or 0 if the date is not a string or cannot
+     * be parsed
+     */
+    private long readDateValue() throws IOException {
+        int c;
+        while ((c = peek()) >= 0 && isWhitespace(c)) {
+            position++;
+        }
+        if (c != '"') {
+            skipValue();
+            return 0;
+        }
+        position++;
+        readString();
+        if (lastDate == null || !contentEquals(text, lastDate)) {
+            lastDate = text.toString();
+            try {
+                lastPublishedAt = ZonedDateTime.parse(lastDate, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            } catch (DateTimeParseException e) {
+                lastPublishedAt = 0;
+            }
+        }
+        return lastPublishedAt;
+    }
+
+    /**
+     * Match a field name without allocating a String for it
+     */
+    private static int fieldOf(StringBuilder key) {
+        if (contentEquals(key, "name")) {
+            return FIELD_NAME;
+        } else if (contentEquals(key, "code")) {
+            return FIELD_CODE;
+        } else if (contentEquals(key, "rate")) {
+            return FIELD_RATE;
+        } else if (contentEquals(key, "inverseRate")) {
+            return FIELD_INVERSE_RATE;
+        } else if (contentEquals(key, "date")) {
+            return FIELD_DATE;
+        }
+        return FIELD_OTHER;
+    }
+
+    static boolean contentEquals(StringBuilder sb, String s) {
+        int length = s.length();
+        if (sb.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (sb.charAt(i) != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same as <code>name.replaceAll("\t", "").replaceAll("convertible ", "")</code>
+     * but done in place
+     */
+    private static void cleanName(StringBuilder name) {
+        int tab;
+        while ((tab = name.indexOf("\t")) >= 0) {
+            name.deleteCharAt(tab);
+        }
+        int index = 0;
+        while ((index = name.indexOf("convertible ", index)) >= 0) {
+            name.delete(index, index + "convertible ".length());
+        }
+    }
+
+    private void readStringValue(String field) throws IOException {
+        if (nextToken() != '"') {
+            throw new JSONException("JSONObject[\"" + field + "\"] not a string.");
+        }
+        readString();
+    }
+
+    private double readNumberValue(String field) throws IOException {
+        int c = nextToken();
+        if (c == '"') {
+            // org.json also accepts numbers quoted as strings
+            readString();
+        } else {
+            text.setLength(0);
+            while (isNumberChar(c)) {
+                text.append((char) c);
+                c = peek();
+                if (!isNumberChar(c)) {
+                    break;
+                }
+                position++;
+            }
+        }
+        try {
+            return Double.parseDouble(text.toString().trim());
+        } catch (NumberFormatException e) {
+            throw new JSONException("JSONObject[\"" + field + "\"] is not a number.");
+        }
+    }
+
+    private static boolean isNumberChar(int c) {
+        return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E';
+    }
+
+    /**
+     * Decode a UTF-8 JSON string into the text buffer, the opening quote is
+     * already consumed
+     */
+    private void readString() throws IOException {
+        text.setLength(0);
+        while (true) {
+            int c = readRequired();
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                c = readRequired();
+                switch (c) {
+                    case 'b':
+                        text.append('\b');
+                        break;
+                    case 'f':
+                        text.append('\f');
+                        break;
+                    case 'n':
+                        text.append('\n');
+                        break;
+                    case 'r':
+                        text.append('\r');
+                        break;
+                    case 't':
+                        text.append('\t');
+                        break;
+                    case 'u':
+                        int unicode = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int digit = Character.digit(readRequired(), 16);
+                            if (digit < 0) {
+                                throw syntaxError("Illegal escape.");
+                            }
+                            unicode = (unicode << 4) | digit;
+                        }
+                        text.append((char) unicode);
+                        break;
+                    case '"':
+                    case '\\':
+                    case '/':
+                        text.append((char) c);
+                        break;
+                    default:
+                        throw syntaxError("Illegal escape.");
+                }
+            } else if (c < 0x80) {
+                text.append((char) c);
+            } else if ((c & 0xE0) == 0xC0) {
+                text.append((char) (((c & 0x1F) << 6) | continuation()));
+            } else if ((c & 0xF0) == 0xE0) {
+                text.append((char) (((c & 0x0F) << 12) | (continuation() << 6) | continuation()));
+            } else if ((c & 0xF8) == 0xF0) {
+                text.appendCodePoint(((c & 0x07) << 18) | (continuation() << 12) | (continuation() << 6) | continuation());
+            } else {
+                text.append('\uFFFD');
+            }
+        }
+    }
+
+    private int continuation() throws IOException {
+        return readRequired() & 0x3F;
+    }
+
+    /**
+     * Skip a JSON string without decoding it, the opening quote is already
+     * consumed
+     */
+    private void skipString() throws IOException {
+        while (true) {
+            int c = readRequired();
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                readRequired();
+            }
+        }
+    }
+
+    /**
+     * Skip any JSON value (string, number, literal, object or array)
+     */
+    void skipValue() throws IOException {
+        int c = nextToken();
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') {
+            int depth = 1;
+            while (depth > 0) {
+                c = readRequired();
+                if (c == '"') {
+                    skipString();
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                }
+            }
+        } else {
+            // Number or literal (true, false, null)
+            while ((c = peek()) >= 0 && c != ',' && c != '}' && c != ']' && !isWhitespace(c)) {
+                position++;
+            }
+        }
+    }
+
+    private void expectToken(char expected) throws IOException {
+        if (nextToken() != expected) {
+            throw syntaxError("Expected a '" + expected + "'");
+        }
+    }
+
+    /**
+     * Read the next non-whitespace byte
+     */
+    private int nextToken() throws IOException {
+        int c;
+        do {
+            c = readRequired();
+        } while (isWhitespace(c));
+        return c;
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    private int readRequired() throws IOException {
+        if (position == limit && !fill()) {
+            throw syntaxError("Unexpected end of currency exchange feed");
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        int n;
+        do {
+            n = in.read(buffer, 0, buffer.length);
+        } while (n == 0);
+        if (n < 0) {
+            return false;
+        }
+        position = 0;
+        limit = n;
+        return true;
+    }
+
+    private static JSONException notFound(String field) {
+        return new JSONException("JSONObject[\"" + field + "\"] not found.");
+    }
+
+    private static JSONException syntaxError(String message) {
+        return new JSONException(message);
+    }
+}
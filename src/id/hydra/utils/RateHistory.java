@@ -0,0 +1,587 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only history of exchange rates per currency pair, to look up the rate
+ * in effect at any past instant. Every pair keeps its timestamps and rates in
+ * two primitive arrays sorted by time, so as-of lookups and range scans are
+ * binary searches. A point is only appended when the rate changed, and the
+ * history is persisted as segment files, each holding the points appended
+ * since the previous flush with delta-encoded timestamps. With a flush delay,
+ * the points recorded within the delay go into one segment, and the segments
+ * are compacted into one whenever there are more than 16.
+ * <br>Segment layout (big-endian), file name "rates-NNNNNN.seg":
+ * <pre>
+ * header : magic "JCHS", version (short), reserved (short), pairCount (int)
+ * pairs  : pairCount x { from length (byte), from (ASCII), to length (byte), to (ASCII),
+ *          count (int), first timestamp (long), count - 1 timestamp deltas (unsigned varint, ms),
+ *          count rates (double) }
+ * </pre>
+ * <br> Example: <code>history.rateAsOf("usd", "idr", order.getPlacedAt())</code>
+ *
+ * @author ShinyDove
+ */
+public class RateHistory {
+
+    private static final int MAGIC = 0x4A434853; // "JCHS"
+    private static final short VERSION = 1;
+    private static final String SEGMENT_PREFIX = "rates-", SEGMENT_SUFFIX = ".seg";
+    private static final int MAX_SEGMENTS = 16;
+
+    /**
+     * The points of a pair within a time range, in time order
+     */
+    public static final class Range {
+
+        private final long[] times;
+        private final double[] rates;
+
+        Range(long[] times, double[] rates) {
+            this.times = times;
+            this.rates = rates;
+        }
+
+        /**
+         * Get the count of points
+         *
+         * @return point count
+         */
+        public int size() {
+            return times.length;
+        }
+
+        /**
+         * Get the time of a point
+         *
+         * @param index the point index
+         * @return epoch milliseconds from which the rate was in effect
+         */
+        public long getTimeMillis(int index) {
+            return times[index];
+        }
+
+        /**
+         * Get the rate of a point
+         *
+         * @param index the point index
+         * @return units of target currency for one unit of source currency
+         */
+        public double getRate(int index) {
+            return rates[index];
+        }
+    }
+
+    /**
+     * The points of one pair, in columns sorted by strictly increasing time
+     */
+    private static final class Series {
+
+        final String from, to;
+        long[] times = new long[16];
+        double[] rates = new double[16];
+        int size, flushed, corrections;
+
+        Series(String from, String to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Append a point, ignoring it if the rate did not change or if it is
+         * older than the latest point
+         */
+        synchronized void append(long time, double rate) {
+            if (size > 0) {
+                long last = times[size - 1];
+                if (time < last || rates[size - 1] == rate) {
+                    return;
+                } else if (time == last) {
+                    // Correct the latest point, and write it again with the next flush
+                    rates[size - 1] = rate;
+                    flushed = Math.min(flushed, size - 1);
+                    corrections++;
+                    return;
+                }
+            }
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                rates = Arrays.copyOf(rates, size * 2);
+            }
+            times[size] = time;
+            rates[size] = rate;
+            size++;
+        }
+
+        synchronized double rateAsOf(long time) {
+            int index = floor(time);
+            return (index >= 0) ? rates[index] : Double.NaN;
+        }
+
+        synchronized Range range(long start, long end, boolean inverse) {
+            int first = floor(start - 1) + 1, last = floor(end - 1) + 1;
+            long[] rangeTimes = Arrays.copyOfRange(times, first, Math.max(first, last));
+            double[] rangeRates = Arrays.copyOfRange(rates, first, Math.max(first, last));
+            if (inverse) {
+                for (int i = 0; i < rangeRates.length; i++) {
+                    rangeRates[i] = 1.0 / rangeRates[i];
+                }
+            }
+            return new Range(rangeTimes, rangeRates);
+        }
+
+        /**
+         * Get the index of the latest point at or before a time, or -1
+         */
+        private int floor(long time) {
+            int index = Arrays.binarySearch(times, 0, size, time);
+            return (index >= 0) ? index : -index - 2;
+        }
+    }
+
+    private final Path directory;
+    private final long flushDelayMillis;
+    private final ScheduledThreadPoolExecutor flusher;
+    private final ConcurrentHashMap<String, Series> pairs = new ConcurrentHashMap<>();
+    private int nextSegment = 1, segmentCount;
+    private boolean flushScheduled;
+
+    /**
+     * Create a history kept in memory only
+     */
+    public RateHistory() {
+        this(null);
+    }
+
+    /**
+     * Create a history persisted as segment files in a directory, call load()
+     * before recording to read the existing segments
+     *
+     * @param directory the segment directory, or null to keep the history in
+     * memory only
+     */
+    public RateHistory(Path directory) {
+        this.directory = directory;
+        this.flushDelayMillis = 0;
+        this.flusher = null;
+    }
+
+    /**
+     * Create a history persisted as segment files in a directory, flushed in
+     * the background by flushLater() and when the JVM exits. Call load()
+     * before recording to read the existing segments.
+     *
+     * @param directory the segment directory
+     * @param flushDelay the delay to gather points in before flushing
+     * @param unit the time unit of flushDelay
+     */
+    public RateHistory(Path directory, long flushDelay, TimeUnit unit) {
+        if (flushDelay <= 0) {
+            throw new IllegalArgumentException("Flush delay must be positive");
+        }
+        this.directory = directory;
+        this.flushDelayMillis = unit.toMillis(flushDelay);
+        this.flusher = new ScheduledThreadPoolExecutor(1, (Runnable task) -> {
+            Thread thread = new Thread(task, "jsoncurrency-history-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flushQuietly));
+    }
+
+    /**
+     * Get the segment directory
+     *
+     * @return segment directory path, or null if kept in memory only
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Read every segment file of the directory, oldest first
+     *
+     * @return count of segments read
+     * @throws IOException if a segment could not be read or is not a rate
+     * history segment
+     */
+    public synchronized int load() throws IOException {
+        TreeMap<Integer, Path> segments = listSegments();
+        for (Map.Entry<Integer, Path> segment : segments.entrySet()) {
+            readSegment(segment.getValue());
+            nextSegment = Math.max(nextSegment, segment.getKey() + 1);
+        }
+        segmentCount = segments.size();
+        // Everything read is on disk already
+        for (Series series : pairs.values()) {
+            synchronized (series) {
+                series.flushed = series.size;
+            }
+        }
+        return segments.size();
+    }
+
+    /**
+     * Record the rates of a base currency exchange table, as pairs from the
+     * base to every target. Rates are in effect from the time the feed
+     * published them, see Currency.getPublishedAt().
+     *
+     * @param baseCurrencyCode the base (local) currency code of the table
+     * @param baseTable Currency exchange list of the base currency
+     * @param timeMillis epoch milliseconds from which the rates without a
+     * publication time are in effect, e.g. the fetch time
+     */
+    public void record(String baseCurrencyCode, List<Currency> baseTable, long timeMillis) {
+        for (Currency curr : baseTable) {
+            long publishedAt = curr.getPublishedAt();
+            append(baseCurrencyCode, curr.getTargetCurrencyCode(), (publishedAt > 0) ? publishedAt : timeMillis, curr.getExchangeRate());
+        }
+    }
+
+    /**
+     * Record the rates of many base currency exchange tables, see record()
+     *
+     * @param currencyLists map of base currency code to its currency exchange list
+     * @param timeMillis epoch milliseconds from which the rates without a
+     * publication time are in effect
+     */
+    public void recordAll(Map<String, ? extends List<Currency>> currencyLists, long timeMillis) {
+        for (Map.Entry<String, ? extends List<Currency>> currencyList : currencyLists.entrySet()) {
+            record(currencyList.getKey(), currencyList.getValue(), timeMillis);
+        }
+    }
+
+    /**
+     * Append the rate of a pair. Unchanged rates and points older than the
+     * latest point of the pair are ignored.
+     *
+     * @param from source currency code
+     * @param to target currency code
+     * @param timeMillis epoch milliseconds from which the rate is in effect
+     * @param rate units of target currency for one unit of source currency
+     */
+    public void append(String from, String to, long timeMillis, double rate) {
+        series(from.toUpperCase(), to.toUpperCase()).append(timeMillis, rate);
+    }
+
+    /**
+     * Get the rate of a pair in effect at an instant, i.e. the latest rate
+     * recorded at or before it. Pairs only recorded the other way round are
+     * answered with the inverse rate.
+     *
+     * @param from source currency code
+     * @param to target currency code
+     * @param instant the instant to look up
+     * @return units of target currency for one unit of source currency, NaN if
+     * nothing was recorded at or before the instant
+     */
+    public double rateAsOf(String from, String to, Instant instant) {
+        long time = instant.toEpochMilli();
+        Series series = pairs.get(key(from, to));
+        if (series != null) {
+            return series.rateAsOf(time);
+        }
+        series = pairs.get(key(to, from));
+        return (series != null) ? 1.0 / series.rateAsOf(time) : Double.NaN;
+    }
+
+    /**
+     * Get the rates of a pair which came into effect within a time range.
+     * Pairs only recorded the other way round are answered with the inverse
+     * rates.
+     *
+     * @param from source currency code
+     * @param to target currency code
+     * @param start the start of the range (inclusive)
+     * @param end the end of the range (exclusive)
+     * @return points of the range in time order, empty if none
+     */
+    public Range range(String from, String to, Instant start, Instant end) {
+        long startTime = start.toEpochMilli(), endTime = end.toEpochMilli();
+        Series series = pairs.get(key(from, to));
+        if (series != null) {
+            return series.range(startTime, endTime, false);
+        }
+        series = pairs.get(key(to, from));
+        return (series != null) ? series.range(startTime, endTime, true) : new Range(new long[0], new double[0]);
+    }
+
+    /**
+     * Get the count of recorded pairs
+     *
+     * @return pair count
+     */
+    public int getPairCount() {
+        return pairs.size();
+    }
+
+    /**
+     * Write the points appended since the previous flush into a new segment,
+     * and compact the segments if there are more than 16
+     *
+     * @return false if there was nothing to write or the history is kept in
+     * memory only
+     * @throws IOException if the segment could not be written
+     */
+    public synchronized boolean flush() throws IOException {
+        flushScheduled = false;
+        if (!writeSegment(false)) {
+            return false;
+        } else if (++segmentCount > MAX_SEGMENTS) {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * Flush once the flush delay has passed, along with whatever is recorded
+     * meanwhile, or right away if there is no flush delay
+     *
+     * @throws IOException if there is no flush delay and the segment could
+     * not be written
+     */
+    public synchronized void flushLater() throws IOException {
+        if (flusher == null) {
+            flush();
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            flusher.schedule(this::flushQuietly, flushDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Flush from the background flusher or the shutdown hook, where failures
+     * can only be logged
+     */
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            Logger.getLogger(RateHistory.class.getName()).log(Level.WARNING, "Could not write rate history " + directory, e);
+        }
+    }
+
+    /**
+     * Write every point into a single new segment and delete the older ones
+     *
+     * @throws IOException if the segment could not be written
+     */
+    public synchronized void compact() throws IOException {
+        int firstKept = nextSegment;
+        if (writeSegment(true)) {
+            for (Map.Entry<Integer, Path> segment : listSegments().entrySet()) {
+                if (segment.getKey() < firstKept) {
+                    Files.deleteIfExists(segment.getValue());
+                }
+            }
+            segmentCount = 1;
+        }
+    }
+
+    private Series series(String from, String to) {
+        return pairs.computeIfAbsent(from + "/" + to, (String key) -> new Series(from, to));
+    }
+
+    private static String key(String from, String to) {
+        return from.toUpperCase() + "/" + to.toUpperCase();
+    }
+
+    /**
+     * Write the unflushed (or all) points of every pair to a temporary file
+     * and atomically move it to the next segment name
+     */
+    private boolean writeSegment(boolean all) throws IOException {
+        if (directory == null) {
+            return false;
+        }
+
+        // Take the columns of every pair as they are now, appends may go on meanwhile
+        List<Series> written = new ArrayList<>();
+        List<long[]> writtenTimes = new ArrayList<>();
+        List<double[]> writtenRates = new ArrayList<>();
+        List<int[]> writtenEnds = new ArrayList<>();
+        int size = 4 + 2 + 2 + 4;
+        for (Series series : pairs.values()) {
+            synchronized (series) {
+                int first = all ? 0 : series.flushed;
+                if (first == series.size) {
+                    continue;
+                }
+                written.add(series);
+                writtenTimes.add(Arrays.copyOfRange(series.times, first, series.size));
+                writtenRates.add(Arrays.copyOfRange(series.rates, first, series.size));
+                writtenEnds.add(new int[]{series.size, series.corrections});
+            }
+            int count = writtenTimes.get(writtenTimes.size() - 1).length;
+            size += 1 + series.from.length() + 1 + series.to.length() + 4 + 8 + (count - 1) * 10 + count * 8;
+        }
+        if (written.isEmpty()) {
+            return false;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putInt(written.size());
+        for (int p = 0; p < written.size(); p++) {
+            Series series = written.get(p);
+            long[] times = writtenTimes.get(p);
+            double[] rates = writtenRates.get(p);
+            putCode(buffer, series.from);
+            putCode(buffer, series.to);
+            buffer.putInt(times.length).putLong(times[0]);
+            for (int i = 1; i < times.length; i++) {
+                putVarLong(buffer, times[i] - times[i - 1]);
+            }
+            for (double rate : rates) {
+                buffer.putDouble(rate);
+            }
+        }
+        buffer.flip();
+
+        Files.createDirectories(directory);
+        Path segment = directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, nextSegment, SEGMENT_SUFFIX));
+        Path temp = Files.createTempFile(directory, SEGMENT_PREFIX, ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, segment, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, segment);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        nextSegment++;
+
+        for (int p = 0; p < written.size(); p++) {
+            Series series = written.get(p);
+            int[] end = writtenEnds.get(p);
+            synchronized (series) {
+                // Unless the latest point was corrected meanwhile, then it is written again next time
+                if (series.corrections == end[1]) {
+                    series.flushed = Math.max(series.flushed, end[0]);
+                }
+            }
+        }
+        return true;
+    }
+
+    private void readSegment(Path segment) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(segment + " is not a rate history segment");
+            } else if (buffer.getShort() != VERSION) {
+                throw new IOException(segment + " has an unsupported rate history version");
+            }
+            buffer.getShort();
+            int pairCount = buffer.getInt();
+            for (int p = 0; p < pairCount; p++) {
+                Series series = series(getCode(buffer), getCode(buffer));
+                int count = buffer.getInt();
+                long[] times = new long[count];
+                times[0] = buffer.getLong();
+                for (int i = 1; i < count; i++) {
+                    times[i] = times[i - 1] + getVarLong(buffer);
+                }
+                for (int i = 0; i < count; i++) {
+                    series.append(times[i], buffer.getDouble());
+                }
+            }
+        } catch (BufferUnderflowException | NegativeArraySizeException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException(segment + " is truncated", e);
+        }
+    }
+
+    private TreeMap<Integer, Path> listSegments() throws IOException {
+        TreeMap<Integer, Path> segments = new TreeMap<>();
+        if (directory == null || !Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    segments.put(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())), file);
+                } catch (NumberFormatException e) {
+                    // Not a segment of ours
+                }
+            }
+        }
+        return segments;
+    }
+
+    private static void putCode(ByteBuffer buffer, String code) throws IOException {
+        byte[] encoded = code.getBytes(StandardCharsets.US_ASCII);
+        if (encoded.length > 0xFF) {
+            throw new IOException("Currency code too long for a rate history segment: " + code);
+        }
+        buffer.put((byte) encoded.length).put(encoded);
+    }
+
+    private static String getCode(ByteBuffer buffer) {
+        byte[] encoded = new byte[buffer.get() & 0xFF];
+        buffer.get(encoded);
+        return new String(encoded, StandardCharsets.US_ASCII);
+    }
+
+    private static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarLong(ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed timestamp delta");
+    }
+}
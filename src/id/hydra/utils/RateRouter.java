@@ -0,0 +1,463 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Graph of every loaded base currency table, finding the best conversion route
+ * between two currencies and arbitrage cycles across tables that disagree.
+ * Every Currency of a table of base B is an edge B to X at its rate and an
+ * edge X to B at its inverse rate, so a pair may be quoted by the tables of
+ * both its currencies and the better quote is kept. Edges are stored as log
+ * rates in a flat N x N array indexed by CurrencyCode id, so the best route
+ * (the maximum rate product) is a hop-bounded Bellman-Ford over sums, and a
+ * refreshed table only updates its own row and column.
+ * <br> Example: <code>RateRouter.load(Arrays.asList("usd", "eur", "idr")).findBestRoute("eur", "idr", 3)</code>
+ *
+ * @author ShinyDove
+ */
+public class RateRouter {
+
+    /**
+     * A conversion route through some currencies
+     */
+    public static final class Route {
+
+        private final int[] ids;
+        private final double[] hopRates;
+        private final double rate;
+
+        Route(int[] ids, double[] hopRates) {
+            this.ids = ids;
+            this.hopRates = hopRates;
+            double product = 1;
+            for (double hopRate : hopRates) {
+                product *= hopRate;
+            }
+            this.rate = product;
+        }
+
+        /**
+         * Get the currencies of the route
+         *
+         * @return upper case currency codes from the source to the target
+         */
+        public List<String> getCurrencyCodes() {
+            List<String> codes = new ArrayList<>(ids.length);
+            for (int id : ids) {
+                codes.add(CurrencyCode.codeOf(id));
+            }
+            return codes;
+        }
+
+        /**
+         * Get the count of conversions of the route
+         *
+         * @return hop count
+         */
+        public int getHops() {
+            return hopRates.length;
+        }
+
+        /**
+         * Get the rate of every conversion of the route
+         *
+         * @param hop the conversion, from 0 to getHops() - 1
+         * @return exchange rate of the conversion
+         */
+        public double getHopRate(int hop) {
+            return hopRates[hop];
+        }
+
+        /**
+         * Get the rate of the whole route
+         *
+         * @return product of the hop rates
+         */
+        public double getRate() {
+            return rate;
+        }
+
+        /**
+         * Convert an amount along the route
+         *
+         * @param amount amount in the source currency
+         * @return amount in the target currency
+         */
+        public double convert(double amount) {
+            return amount * rate;
+        }
+
+        @Override
+        public String toString() {
+            return String.join(" -> ", getCurrencyCodes()) + " @ " + rate;
+        }
+    }
+
+    private static final double MISSING = Double.NEGATIVE_INFINITY;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Guarded by lock, n x n arrays indexed by [from * n + to]
+    private int n;
+    private double[] direct = new double[0], inverse = new double[0], logRates = new double[0];
+    private boolean[] loaded = new boolean[0];
+
+    /**
+     * Create a router with the tables of many base currencies, fetched
+     * concurrently through CurrencyParser.fetchAll()
+     *
+     * @param baseCodes base currency codes to load
+     * @return router of the fetched tables
+     * @throws InterruptedException if interrupted while waiting for fetches
+     */
+    public static RateRouter load(Collection<String> baseCodes) throws InterruptedException {
+        RateRouter router = new RateRouter();
+        router.updateAll(CurrencyParser.fetchAll(baseCodes));
+        return router;
+    }
+
+    /**
+     * Replace the quotes of a base currency table, updating only the edges
+     * from and to its base. Codes which are not three letters are left out,
+     * see CurrencyCode.isValid().
+     *
+     * @param baseCurrencyCode the base (local) currency code of the table
+     * @param baseTable Currency exchange list of the base currency
+     */
+    public void update(String baseCurrencyCode, List<Currency> baseTable) {
+        if (!CurrencyCode.isValid(baseCurrencyCode)) {
+            return;
+        }
+        int base = CurrencyCode.register(baseCurrencyCode);
+        int[] ids = new int[baseTable.size()];
+        for (int i = 0; i < ids.length; i++) {
+            String code = baseTable.get(i).getTargetCurrencyCode();
+            ids[i] = CurrencyCode.isValid(code) ? CurrencyCode.register(code) : CurrencyCode.UNKNOWN;
+        }
+        lock.writeLock().lock();
+        try {
+            ensureCapacity(CurrencyCode.size());
+            clear(base);
+            for (int i = 0; i < ids.length; i++) {
+                int x = ids[i];
+                if (x == CurrencyCode.UNKNOWN || x == base || !Double.isNaN(direct[base * n + x])) {
+                    continue; // the first entry of a code wins
+                }
+                Currency curr = baseTable.get(i);
+                direct[base * n + x] = curr.getExchangeRate();
+                inverse[x * n + base] = curr.getReverseExchangeRate();
+            }
+            loaded[base] = true;
+            for (int x = 0; x < n; x++) {
+                link(base, x);
+                link(x, base);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replace the quotes of many base currency tables, see update()
+     *
+     * @param currencyLists map of base currency code to its currency exchange
+     * list
+     */
+    public void updateAll(Map<String, ? extends List<Currency>> currencyLists) {
+        for (Map.Entry<String, ? extends List<Currency>> table : currencyLists.entrySet()) {
+            update(table.getKey(), table.getValue());
+        }
+    }
+
+    /**
+     * Remove the quotes of a base currency table. Codes which are not three
+     * letters, or were never loaded, are ignored.
+     *
+     * @param baseCurrencyCode the base currency code
+     */
+    public void remove(String baseCurrencyCode) {
+        int base = CurrencyCode.idOf(baseCurrencyCode);
+        if (base == CurrencyCode.UNKNOWN) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (base >= n || !loaded[base]) {
+                return;
+            }
+            clear(base);
+            loaded[base] = false;
+            for (int x = 0; x < n; x++) {
+                link(base, x);
+                link(x, base);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Get the loaded base currencies
+     *
+     * @return upper case base currency codes
+     */
+    public List<String> getBaseCodes() {
+        lock.readLock().lock();
+        try {
+            List<String> codes = new ArrayList<>();
+            for (int id = 0; id < n; id++) {
+                if (loaded[id]) {
+                    codes.add(CurrencyCode.codeOf(id));
+                }
+            }
+            return codes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the best single quote of a pair out of the tables of its two
+     * currencies
+     *
+     * @param sourceCurrencyCode source currency code
+     * @param targetCurrencyCode target currency code
+     * @return exchange rate, NaN if neither table quotes the pair
+     */
+    public double getDirectRate(String sourceCurrencyCode, String targetCurrencyCode) {
+        int from = CurrencyCode.idOf(sourceCurrencyCode), to = CurrencyCode.idOf(targetCurrencyCode);
+        lock.readLock().lock();
+        try {
+            if (from < 0 || to < 0 || from >= n || to >= n) {
+                return Double.NaN;
+            }
+            double logRate = logRates[from * n + to];
+            return (logRate == MISSING) ? Double.NaN : Math.exp(logRate);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the conversion route with the best rate of at most maxHops
+     * conversions. A route only passes a currency twice if the detour is an
+     * arbitrage.
+     *
+     * @param sourceCurrencyCode source currency code
+     * @param targetCurrencyCode target currency code
+     * @param maxHops the maximum count of conversions, 1 for the best direct
+     * quote
+     * @return the best route, or null if no route of at most maxHops exists
+     */
+    public Route findBestRoute(String sourceCurrencyCode, String targetCurrencyCode, int maxHops) {
+        if (maxHops <= 0) {
+            throw new IllegalArgumentException("Hop count must be positive");
+        }
+        int from = CurrencyCode.idOf(sourceCurrencyCode), to = CurrencyCode.idOf(targetCurrencyCode);
+        lock.readLock().lock();
+        try {
+            if (from < 0 || to < 0 || from >= n || to >= n) {
+                return null;
+            } else if (from == to) {
+                return new Route(new int[]{from}, new double[0]);
+            }
+            double[] levels = new double[(maxHops + 1) * n];
+            int hops = search(from, to, maxHops, levels, Double.NEGATIVE_INFINITY);
+            return (hops > 0) ? route(from, to, hops, levels) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Find the arbitrage cycles of at most maxHops conversions, i.e. routes
+     * from a currency back to itself with a rate above 1. Every currency
+     * reports its best cycle through currencies of higher CurrencyCode id, so
+     * each cycle is reported once.
+     *
+     * @param minProfit the rate a cycle must exceed 1 by, e.g. 0.001 to
+     * ignore rounding of the feeds
+     * @param maxHops the maximum count of conversions, at least 2
+     * @return the cycles starting and ending at their first currency, most
+     * profitable first
+     */
+    public List<Route> findArbitrage(double minProfit, int maxHops) {
+        if (maxHops < 2 || !(minProfit >= 0)) {
+            throw new IllegalArgumentException("Hop count must be at least 2 and profit must not be negative");
+        }
+        double threshold = Math.log1p(minProfit);
+        List<Route> cycles = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            double[] levels = new double[(maxHops + 1) * n];
+            for (int start = 0; start < n; start++) {
+                int hops = search(start, start, maxHops, levels, threshold);
+                if (hops > 0) {
+                    cycles.add(route(start, start, hops, levels));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        cycles.sort((Route r1, Route r2) -> Double.compare(r2.getRate(), r1.getRate()));
+        return cycles;
+    }
+
+    /**
+     * Hop-bounded Bellman-Ford from a currency, keeping in levels the best log
+     * rate of exactly h conversions to every currency at [h * n + currency].
+     * The last hop only relaxes the edges into the target. A cycle search
+     * (from == to) only passes currencies of higher id than its start.
+     *
+     * @return the hop count of the best route to the target above minLogRate,
+     * 0 if there is none
+     */
+    private int search(int from, int to, int maxHops, double[] levels, double minLogRate) {
+        boolean cycle = (from == to);
+        Arrays.fill(levels, 0, n, MISSING);
+        levels[from] = 0;
+        double bestLogRate = minLogRate;
+        int bestHops = 0;
+        for (int hop = 1; hop <= maxHops; hop++) {
+            int previous = (hop - 1) * n, offset = hop * n;
+            if (hop == maxHops) {
+                levels[offset + to] = relaxInto(levels, previous, cycle ? from : 0, to);
+            } else {
+                Arrays.fill(levels, offset, offset + n, MISSING);
+                boolean reached = false;
+                for (int u = cycle ? from : 0; u < n; u++) {
+                    double logRate = levels[previous + u];
+                    if (logRate == MISSING) {
+                        continue;
+                    }
+                    reached = true;
+                    int row = u * n;
+                    for (int v = cycle ? from : 0; v < n; v++) {
+                        double candidate = logRate + logRates[row + v];
+                        if (candidate > levels[offset + v]) {
+                            levels[offset + v] = candidate;
+                        }
+                    }
+                }
+                if (!reached) {
+                    break;
+                }
+            }
+            if (levels[offset + to] > bestLogRate && (!cycle || hop >= 2)) {
+                bestLogRate = levels[offset + to];
+                bestHops = hop;
+            }
+            if (cycle) {
+                levels[offset + from] = MISSING; // a cycle ends at its start, it does not pass it
+            }
+        }
+        return bestHops;
+    }
+
+    /**
+     * Get the best log rate into a currency over one more hop from a level
+     */
+    private double relaxInto(double[] levels, int previous, int first, int v) {
+        double best = MISSING;
+        for (int u = first; u < n; u++) {
+            double candidate = levels[previous + u] + logRates[u * n + v];
+            if (candidate > best) {
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Walk a route found by search() back from its target, taking at every
+     * hop the predecessor the level was relaxed from
+     */
+    private Route route(int from, int to, int hops, double[] levels) {
+        int[] ids = new int[hops + 1];
+        double[] hopRates = new double[hops];
+        ids[0] = from;
+        ids[hops] = to;
+        double target = relaxInto(levels, (hops - 1) * n, (from == to) ? from : 0, to);
+        for (int hop = hops; hop > 1; hop--) {
+            int v = ids[hop], previous = (hop - 1) * n, u = -1;
+            for (int candidate = (from == to) ? from : 0; candidate < n; candidate++) {
+                if (levels[previous + candidate] + logRates[candidate * n + v] == target) {
+                    u = candidate;
+                    break;
+                }
+            }
+            ids[hop - 1] = u;
+            target = levels[previous + u];
+        }
+        for (int hop = 0; hop < hops; hop++) {
+            hopRates[hop] = Math.exp(logRates[ids[hop] * n + ids[hop + 1]]);
+        }
+        return new Route(ids, hopRates);
+    }
+
+    /**
+     * Keep the better of the two quotes of a pair as its edge, guarded by the
+     * write lock
+     */
+    /**
+     * Drop the quotes of a base currency table, guarded by the write lock
+     */
+    private void clear(int base) {
+        for (int x = 0; x < n; x++) {
+            direct[base * n + x] = Double.NaN;
+            inverse[x * n + base] = Double.NaN;
+        }
+    }
+
+    private void link(int from, int to) {
+        int edge = from * n + to;
+        double rate = Math.max(valid(direct[edge]), valid(inverse[edge]));
+        logRates[edge] = (from != to && rate > 0) ? Math.log(rate) : MISSING;
+    }
+
+    private static double valid(double rate) {
+        return (rate > 0 && !Double.isInfinite(rate)) ? rate : 0;
+    }
+
+    /**
+     * Grow the arrays to hold size currencies, guarded by the write lock
+     */
+    private void ensureCapacity(int size) {
+        if (size <= n) {
+            return;
+        }
+        double[] grownDirect = new double[size * size], grownInverse = new double[size * size], grownLogRates = new double[size * size];
+        Arrays.fill(grownDirect, Double.NaN);
+        Arrays.fill(grownInverse, Double.NaN);
+        Arrays.fill(grownLogRates, MISSING);
+        for (int from = 0; from < n; from++) {
+            System.arraycopy(direct, from * n, grownDirect, from * size, n);
+            System.arraycopy(inverse, from * n, grownInverse, from * size, n);
+            System.arraycopy(logRates, from * n, grownLogRates, from * size, n);
+        }
+        direct = grownDirect;
+        inverse = grownInverse;
+        logRates = grownLogRates;
+        loaded = Arrays.copyOf(loaded, size);
+        n = size;
+    }
+}
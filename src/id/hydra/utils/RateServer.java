@@ -0,0 +1,372 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * Long-running currency exchange server on top of the JDK HTTP server. The
+ * exchange tables are kept warm in the rate cache, so a query costs neither
+ * JVM startup nor a web fetch, and connections are kept alive so a client may
+ * pipeline many queries over one connection. Every endpoint answers in JSON:
+ * <br> <code>/convert?from=usd&amp;to=idr&amp;amount=25</code> - convert an amount
+ * <br> <code>/pair?from=usd&amp;to=idr</code> - exchange rate between two currencies
+ * <br> <code>/table?base=usd&amp;sort=code</code> - exchange table of a currency
+ * <br> <code>/cli?arg=usd&amp;arg=idr&amp;arg=25(&amp;format=csv)</code> - run a jsoncurrency.jar command line
+ * <br> <code>/metrics</code> - CurrencyParser.getMetrics() in the Prometheus text format, if set
+ *
+ * @author ShinyDove
+ */
+public class RateServer {
+
+    /**
+     * The port to listen on if none is given
+     */
+    public static final int DEFAULT_PORT = 8089;
+
+    /**
+     * Answer a query with a JSON object
+     */
+    private interface JSONHandler {
+
+        JSONObject handle(Map<String, List<String>> query) throws Exception;
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Create a server, not yet started
+     *
+     * @param address the address to listen on
+     * @param threads the count of queries answered at a time
+     * @throws IOException if the address could not be bound
+     */
+    public RateServer(InetSocketAddress address, int threads) throws IOException {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("Thread count must be positive");
+        }
+        server = HttpServer.create(address, 0);
+        server.createContext("/convert", json(RateServer::convert));
+        server.createContext("/pair", json(RateServer::pair));
+        server.createContext("/table", json(RateServer::table));
+        server.createContext("/cli", json(RateServer::cli));
+        server.createContext("/metrics", RateServer::metrics);
+        executor = Executors.newFixedThreadPool(threads, (Runnable task) -> {
+            Thread thread = new Thread(task, "jsoncurrency-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+    }
+
+    /**
+     * Start answering queries
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stop answering queries
+     *
+     * @param delay the seconds to wait for queries being answered
+     */
+    public void stop(int delay) {
+        server.stop(delay);
+        executor.shutdown();
+    }
+
+    /**
+     * Get the address the server listens on
+     *
+     * @return bound address
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Start a server on the loopback address until the JVM is stopped. The
+     * exchange tables are cached for 10 minutes unless a rate cache is set,
+     * and the bases listed in jsoncurrency.refresh are refreshed in the
+     * background.
+     *
+     * @param args optional port to listen on
+     * @throws IOException if the port could not be bound
+     */
+    static void serve(String[] args) throws IOException {
+        int port = (args.length >= 1) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        if (CurrencyParser.getRateCache() == null) {
+            CurrencyParser.setRateCache(new RateCache(10, TimeUnit.MINUTES, 256));
+        }
+        String refresh = System.getProperty("jsoncurrency.refresh");
+        if (refresh != null && CurrencyParser.getRefreshScheduler() == null) {
+            // Keep the given bases warm so their queries never wait for the web
+            RefreshScheduler scheduler = new RefreshScheduler(10, TimeUnit.MINUTES);
+            for (String base : refresh.split(",")) {
+                if (!base.trim().isEmpty()) {
+                    scheduler.schedule(base.trim());
+                }
+            }
+            CurrencyParser.setRefreshScheduler(scheduler);
+        }
+
+        final RateServer rateServer = new RateServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+        rateServer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> rateServer.stop(1)));
+
+        InetSocketAddress address = rateServer.getAddress();
+        System.out.println("Serving currency exchange information at http://" + address.getHostString() + ":" + address.getPort() + "/");
+        System.out.println("Run the command lines with -Djsoncurrency.server=http://" + address.getHostString() + ":" + address.getPort() + " to use it");
+    }
+
+    /**
+     * Run a command line on a running server and display its output
+     *
+     * @param server the server URL, e.g. http://127.0.0.1:8089
+     * @param args the command line arguments
+     * @param out the stream to display into
+     * @param err the stream to display errors into
+     * @return true if the server answered, false if it could not be reached
+     */
+    static boolean forward(String server, String[] args, PrintStream out, PrintStream err) {
+        try {
+            StringBuilder url = new StringBuilder(server);
+            if (url.length() > 0 && url.charAt(url.length() - 1) == '/') {
+                url.setLength(url.length() - 1);
+            }
+            // Tables are rendered in the format of this command line, not the one of the server
+            url.append("/cli?format=").append(CurrencyParser.getTableFormat().name().toLowerCase());
+            for (String arg : args) {
+                url.append("&arg=").append(URLEncoder.encode(arg, "UTF-8"));
+            }
+
+            // A plain connection, as the feed fetcher would count the call in the feed metrics and cache it
+            HttpURLConnection connection = (HttpURLConnection) new URL(url.toString()).openConnection();
+            connection.setConnectTimeout(1000);
+            connection.setReadTimeout(60000);
+            JSONObject response;
+            try (InputStream in = connection.getInputStream()) {
+                response = new JSONObject(new JSONTokener(new InputStreamReader(in, StandardCharsets.UTF_8)));
+            }
+            out.print(response.getString("out"));
+            err.print(response.getString("err"));
+            return true;
+        } catch (IOException | JSONException e) {
+            Logger.getLogger(RateServer.class.getName()).log(Level.FINE, "Could not reach currency exchange server " + server, e);
+            return false;
+        }
+    }
+
+    private static JSONObject convert(Map<String, List<String>> query) throws Exception {
+        double amount = Double.parseDouble(parameter(query, "amount"));
+        Currency curr = CurrencyParser.getBetweenCurrencyExchangeRate(parameter(query, "from"), parameter(query, "to"));
+
+        JSONObject response = pairOf(curr);
+        response.put("amount", amount);
+        response.put("result", curr.calculateExchangeRate(amount));
+        Metrics metrics = CurrencyParser.getMetrics();
+        if (metrics != null) {
+            metrics.increment("conversions");
+        }
+        return response;
+    }
+
+    private static JSONObject pair(Map<String, List<String>> query) throws Exception {
+        Currency curr = CurrencyParser.getBetweenCurrencyExchangeRate(parameter(query, "from"), parameter(query, "to"));
+
+        JSONObject response = pairOf(curr);
+        response.put("rate", curr.getExchangeRate());
+        response.put("inverseRate", curr.getReverseExchangeRate());
+        return response;
+    }
+
+    private static JSONObject table(Map<String, List<String>> query) throws Exception {
+        String base = parameter(query, "base");
+        List<String> sort = query.get("sort");
+        CurrencyTable table = CurrencyParser.getCurrencyTable(base);
+
+        // Sort like the command line does (currency name unless asked for currency code)
+        List<Currency> currLists = (sort != null && sort.get(0).equals("code")) ? table.sortedByCode() : table.sortedByName();
+
+        JSONArray rates = new JSONArray();
+        for (Currency curr : currLists) {
+            JSONObject rate = new JSONObject();
+            rate.put("code", curr.getTargetCurrencyCode());
+            rate.put("name", curr.getTargetCurrencyExchangeName());
+            rate.put("rate", curr.getExchangeRate());
+            rate.put("inverseRate", curr.getReverseExchangeRate());
+            rates.put(rate);
+        }
+        JSONObject response = new JSONObject();
+        response.put("base", base.toUpperCase());
+        response.put("rates", rates);
+        return response;
+    }
+
+    private static JSONObject cli(Map<String, List<String>> query) throws Exception {
+        List<String> args = query.get("arg");
+        List<String> format = query.get("format");
+        TableRenderer.Format tableFormat = (format != null) ? TableRenderer.Format.forName(format.get(0)) : CurrencyParser.getTableFormat();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(), err = new ByteArrayOutputStream();
+        try (PrintStream outStream = new PrintStream(out, false, "UTF-8"); PrintStream errStream = new PrintStream(err, false, "UTF-8")) {
+            CurrencyParser.run((args != null) ? args.toArray(new String[args.size()]) : new String[0], tableFormat, outStream, errStream);
+        }
+
+        JSONObject response = new JSONObject();
+        response.put("out", new String(out.toByteArray(), StandardCharsets.UTF_8));
+        response.put("err", new String(err.toByteArray(), StandardCharsets.UTF_8));
+        return response;
+    }
+
+    /**
+     * Answer with the metrics in the Prometheus text format, or 404 if no
+     * metrics are recorded
+     */
+    private static void metrics(HttpExchange exchange) throws IOException {
+        Metrics metrics = CurrencyParser.getMetrics();
+        int status = 200;
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        if (!exchange.getRequestMethod().equals("GET")) {
+            status = 405;
+        } else if (metrics == null) {
+            status = 404;
+        } else {
+            try (PrintStream out = new PrintStream(text, false, "UTF-8")) {
+                new PrometheusMetricsExporter(out).export(metrics);
+            }
+        }
+
+        byte[] body = text.toByteArray();
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=UTF-8");
+        exchange.sendResponseHeaders(status, (body.length > 0) ? body.length : -1);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static JSONObject pairOf(Currency curr) {
+        JSONObject response = new JSONObject();
+        response.put("from", curr.getLocalCurrencyCode());
+        response.put("to", curr.getTargetCurrencyCode());
+        response.put("name", curr.getTargetCurrencyExchangeName());
+        return response;
+    }
+
+    /**
+     * Answer GET queries with the JSON object of a handler, or with an error
+     * object and a matching status code if it failed
+     */
+    private static HttpHandler json(final JSONHandler handler) {
+        return (HttpExchange exchange) -> {
+            int status = 200;
+            JSONObject response;
+            try {
+                if (!exchange.getRequestMethod().equals("GET")) {
+                    status = 405;
+                    response = error("Only GET is allowed");
+                } else {
+                    response = handler.handle(parseQuery(exchange.getRequestURI().getRawQuery()));
+                }
+            } catch (UnknownCurrencyException e) {
+                status = 404;
+                response = error(e.getMessage());
+            } catch (JSONException e) {
+                // The exchange table fetched from the web is malformed
+                status = 502;
+                response = error("Malformed exchange table: " + e.getMessage());
+            } catch (IllegalArgumentException e) {
+                status = 400;
+                response = error(e.getMessage());
+            } catch (IOException e) {
+                // The exchange table could not be fetched from the web
+                status = 502;
+                response = error(e.getMessage());
+            } catch (Exception e) {
+                Logger.getLogger(RateServer.class.getName()).log(Level.WARNING, "Could not answer " + exchange.getRequestURI(), e);
+                status = 500;
+                response = error(e.toString());
+            }
+
+            byte[] body = response.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        };
+    }
+
+    private static JSONObject error(String message) {
+        JSONObject response = new JSONObject();
+        response.put("error", (message != null) ? message : "Unknown error");
+        return response;
+    }
+
+    private static String parameter(Map<String, List<String>> query, String name) {
+        List<String> values = query.get(name);
+        if (values == null || values.get(0).isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return values.get(0);
+    }
+
+    private static Map<String, List<String>> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, List<String>> query = new LinkedHashMap<>();
+        for (String pair : rawQuery.split("&")) {
+            int split = pair.indexOf('=');
+            String name = URLDecoder.decode((split >= 0) ? pair.substring(0, split) : pair, "UTF-8");
+            String value = (split >= 0) ? URLDecoder.decode(pair.substring(split + 1), "UTF-8") : "";
+            query.computeIfAbsent(name, (String key) -> new ArrayList<>()).add(value);
+        }
+        return query;
+    }
+}
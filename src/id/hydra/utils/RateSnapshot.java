@@ -0,0 +1,177 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable view of the currency exchange tables of every fetched base
+ * currency. A snapshot never changes once built: a refresh builds the next
+ * snapshot with with()/withAll(), reusing the untouched tables, and publishes
+ * it with a single reference swap, so readers holding a snapshot see all pairs
+ * consistently without any locking.
+ * <br> Example: <code>CurrencyParser.getRateSnapshot().getRate("eur", "idr")</code>
+ *
+ * @author ShinyDove
+ */
+public final class RateSnapshot {
+
+    /**
+     * The snapshot without any table
+     */
+    public static final RateSnapshot EMPTY = new RateSnapshot(Collections.<String, CurrencyTable>emptyMap(),
+            Collections.<String, RateTable>emptyMap(), 0, 0);
+
+    private final Map<String, CurrencyTable> tables;
+    private final Map<String, RateTable> rateTables;
+    private final long version, createdAt;
+
+    private RateSnapshot(Map<String, CurrencyTable> tables, Map<String, RateTable> rateTables, long version, long createdAt) {
+        this.tables = tables;
+        this.rateTables = rateTables;
+        this.version = version;
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * Build the next snapshot with the table of a base currency added or
+     * replaced
+     *
+     * @param baseCurrencyCode the base (local) currency code of the table
+     * @param baseTable Currency exchange list of the base currency
+     * @return the next snapshot, this one is left unchanged
+     */
+    public RateSnapshot with(String baseCurrencyCode, List<Currency> baseTable) {
+        return withAll(Collections.singletonMap(baseCurrencyCode, baseTable));
+    }
+
+    /**
+     * Build the next snapshot with the tables of many base currencies added or
+     * replaced
+     *
+     * @param currencyLists map of base currency code to its currency exchange list
+     * @return the next snapshot, this one is left unchanged
+     */
+    public RateSnapshot withAll(Map<String, ? extends List<Currency>> currencyLists) {
+        Map<String, CurrencyTable> nextTables = new LinkedHashMap<>(tables);
+        Map<String, RateTable> nextRateTables = new HashMap<>(rateTables);
+        for (Map.Entry<String, ? extends List<Currency>> currencyList : currencyLists.entrySet()) {
+            String base = currencyList.getKey().toUpperCase();
+            nextTables.put(base, new CurrencyTable(base, currencyList.getValue()));
+            if (CurrencyCode.isValid(base)) {
+                nextRateTables.put(base, new RateTable(base, currencyList.getValue()));
+            } else {
+                nextRateTables.remove(base);
+            }
+        }
+        return new RateSnapshot(Collections.unmodifiableMap(nextTables), nextRateTables, version + 1, System.currentTimeMillis());
+    }
+
+    /**
+     * Get the count of snapshots built before this one
+     *
+     * @return snapshot version, 0 for EMPTY
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Get the time this snapshot was built
+     *
+     * @return epoch milliseconds, 0 for EMPTY
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Get the base currencies having a table in this snapshot
+     *
+     * @return upper case base currency codes
+     */
+    public Set<String> getBaseCodes() {
+        return tables.keySet();
+    }
+
+    /**
+     * Get the currency exchange list of a base currency
+     *
+     * @param baseCurrencyCode the base currency code
+     * @return unmodifiable currency exchange list, or null if this snapshot has
+     * no table of the base
+     */
+    public List<Currency> getTable(String baseCurrencyCode) {
+        CurrencyTable table = tables.get(baseCurrencyCode.toUpperCase());
+        return (table != null) ? table.asList() : null;
+    }
+
+    /**
+     * Get the indexed and sorted currency table of a base currency
+     *
+     * @param baseCurrencyCode the base currency code
+     * @return currency table, or null if this snapshot has no table of the base
+     */
+    public CurrencyTable getCurrencyTable(String baseCurrencyCode) {
+        return tables.get(baseCurrencyCode.toUpperCase());
+    }
+
+    /**
+     * Get the rate table of a base currency
+     *
+     * @param baseCurrencyCode the base currency code
+     * @return rate table, or null if this snapshot has no table of the base
+     */
+    public RateTable getRateTable(String baseCurrencyCode) {
+        return rateTables.get(baseCurrencyCode.toUpperCase());
+    }
+
+    /**
+     * Get the exchange rate between two currencies, from the table of the
+     * source currency if any, else from the table of the target currency or of
+     * any base having both
+     *
+     * @param from source currency code
+     * @param to target currency code
+     * @return units of target currency for one unit of source currency, NaN if
+     * no table of this snapshot has both currencies
+     */
+    public double getRate(String from, String to) {
+        int fromId = CurrencyCode.idOf(from), toId = CurrencyCode.idOf(to);
+        if (fromId == CurrencyCode.UNKNOWN || toId == CurrencyCode.UNKNOWN) {
+            return Double.NaN;
+        }
+        RateTable table = rateTables.get(from.toUpperCase());
+        if (table == null || !table.contains(toId)) {
+            table = rateTables.get(to.toUpperCase());
+        }
+        if (table == null || !table.contains(fromId)) {
+            table = null;
+            for (RateTable candidate : rateTables.values()) {
+                if (candidate.contains(fromId) && candidate.contains(toId)) {
+                    table = candidate;
+                    break;
+                }
+            }
+        }
+        return (table != null && table.contains(fromId) && table.contains(toId)) ? table.rate(fromId, toId) : Double.NaN;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Provider of currency exchange tables, such as the floatrates web feed, a
+ * local directory of feed files or tables published in memory. Every source
+ * keeps its own cache and decides when to refresh it. Sources are looked up
+ * by name through ServiceLoader (META-INF/services/id.hydra.utils.RateSource)
+ * and set with CurrencyParser.setRateSource().
+ * <br> Example: <code>CurrencyParser.setRateSource(RateSource.forName("directory"))</code>
+ *
+ * @author ShinyDove
+ */
+public interface RateSource {
+
+    /**
+     * Get the name of this source, used to select it by configuration
+     *
+     * @return source name, e.g. "floatrates"
+     */
+    String getName();
+
+    /**
+     * Get the currency exchange list of a base currency
+     *
+     * @param baseCurrencyCode the base (local) currency code
+     * @return Currency exchange list of foreign currency for the base currency,
+     * which must not be modified
+     * @throws Exception if the table could not be fetched or parsed
+     */
+    List<Currency> fetch(String baseCurrencyCode) throws Exception;
+
+    /**
+     * Find a registered rate source by name
+     *
+     * @param name the source name (any case)
+     * @return a new instance of the source
+     * @throws IllegalArgumentException if no source has that name
+     */
+    static RateSource forName(String name) {
+        for (RateSource source : ServiceLoader.load(RateSource.class)) {
+            if (source.getName().equalsIgnoreCase(name)) {
+                return source;
+            }
+        }
+        throw new IllegalArgumentException("No rate source named " + name);
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Exchange rates of one base currency table stored in primitive arrays indexed
+ * by CurrencyCode id. Conversions between any two currencies of the table go
+ * through the base and allocate nothing.
+ * <br> Example: <code>table.convert(CurrencyCode.idOf("EUR"), CurrencyCode.idOf("IDR"), 25)</code>
+ *
+ * @author ShinyDove
+ */
+public class RateTable {
+
+    private final int baseId;
+
+    /**
+     * Units of a currency for one unit of base and units of base for one unit
+     * of a currency, NaN for currencies not in the table
+     */
+    private final double[] perBase, basePer;
+
+    /**
+     * Create a rate table from a base currency exchange table. Entries whose
+     * code is not three letters are left out, see CurrencyCode.isValid().
+     *
+     * @param baseCurrencyCode the base (local) currency code of the table
+     * @param baseTable Currency exchange list of the base currency
+     * @throws IllegalArgumentException if the base code is not three letters
+     */
+    public RateTable(String baseCurrencyCode, List<Currency> baseTable) {
+        baseId = CurrencyCode.register(baseCurrencyCode);
+        for (Currency curr : baseTable) {
+            if (CurrencyCode.isValid(curr.getTargetCurrencyCode())) {
+                CurrencyCode.register(curr.getTargetCurrencyCode());
+            }
+        }
+
+        perBase = new double[CurrencyCode.size()];
+        basePer = new double[perBase.length];
+        Arrays.fill(perBase, Double.NaN);
+        Arrays.fill(basePer, Double.NaN);
+        perBase[baseId] = basePer[baseId] = 1.0;
+        for (Currency curr : baseTable) {
+            int id = CurrencyCode.idOf(curr.getTargetCurrencyCode());
+            if (id != baseId && id != CurrencyCode.UNKNOWN) {
+                perBase[id] = curr.getExchangeRate();
+                basePer[id] = curr.getReverseExchangeRate();
+            }
+        }
+    }
+
+    /**
+     * Load a rate table from the currency exchange table of a base currency
+     * queried via CurrencyParser
+     *
+     * @param baseCurrencyCode the base currency code, e.g. "usd"
+     * @return rate table of the base currency
+     * @throws Exception if any parse failure occurred
+     */
+    public static RateTable load(String baseCurrencyCode) throws Exception {
+        return new RateTable(baseCurrencyCode, CurrencyParser.getCurrencyExchangeLists(baseCurrencyCode));
+    }
+
+    /**
+     * Get the id of the base currency
+     *
+     * @return base currency id
+     */
+    public int getBaseId() {
+        return baseId;
+    }
+
+    /**
+     * Check whether a currency has a rate in this table
+     *
+     * @param id the currency id
+     * @return true if the currency can be converted with this table
+     */
+    public boolean contains(int id) {
+        return id >= 0 && id < perBase.length && !Double.isNaN(perBase[id]);
+    }
+
+    /**
+     * Get the exchange rate between two currencies
+     *
+     * @param from source currency id
+     * @param to target currency id
+     * @return units of target currency for one unit of source currency, NaN if
+     * either currency is not in the table
+     */
+    public double rate(int from, int to) {
+        return (from == to) ? 1.0 : basePer[from] * perBase[to];
+    }
+
+    /**
+     * Convert an amount between two currencies without allocating. Both ids
+     * must have been registered when the table was built, see contains().
+     *
+     * @param from source currency id
+     * @param to target currency id
+     * @param amount amount in source currency
+     * @return amount in target currency, NaN if either currency is not in the
+     * table
+     */
+    public double convert(int from, int to, double amount) {
+        return (from == to) ? amount : amount * basePer[from] * perBase[to];
+    }
+}
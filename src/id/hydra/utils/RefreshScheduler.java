@@ -0,0 +1,274 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keep the currency exchange lists of a set of base currencies warm in the
+ * background. Every base is refreshed ahead of its maximum age, at a jittered
+ * time so that many bases (or many processes) do not hit the upstream at
+ * once, and retried with exponential backoff while fetches fail. Reads are
+ * served stale-while-revalidate: getTable() always answers from memory with
+ * the last table fetched, never waiting for a fetch.
+ * <br> Example: <code>CurrencyParser.setRefreshScheduler(new RefreshScheduler(10, TimeUnit.MINUTES)); CurrencyParser.getRefreshScheduler().scheduleAll(Arrays.asList("usd", "eur"))</code>
+ *
+ * @author ShinyDove
+ */
+public class RefreshScheduler implements Closeable {
+
+    /**
+     * The last table of a scheduled base
+     */
+    private static final class Entry {
+
+        final String baseCurrencyCode;
+        volatile List<Currency> currencies;
+        volatile long loadedAt;
+        // Only touched by the refresh task of the entry, which never overlaps itself
+        int failures;
+
+        Entry(String baseCurrencyCode) {
+            this.baseCurrencyCode = baseCurrencyCode;
+        }
+    }
+
+    private final long maxAgeNanos, refreshNanos, minBackoffNanos;
+    private final double jitter;
+    private final RateCache.Loader loader;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final ScheduledThreadPoolExecutor executor;
+    private final LongAdder refreshes = new LongAdder(), failures = new LongAdder();
+
+    /**
+     * Create a scheduler refreshing through CurrencyParser at 80% of the
+     * maximum age with 10% jitter, backing off from 5 seconds (at most a
+     * sixteenth of the maximum age) on failures
+     *
+     * @param maxAge how long a fetched table stays fresh, e.g. the upstream
+     * publication interval
+     * @param unit the time unit of maxAge
+     */
+    public RefreshScheduler(long maxAge, TimeUnit unit) {
+        this(unit.toNanos(maxAge), 0.8, 0.1, Math.min(TimeUnit.SECONDS.toNanos(5), unit.toNanos(maxAge) / 16),
+                TimeUnit.NANOSECONDS, 2, CurrencyParser::refreshCurrencyExchangeLists);
+    }
+
+    /**
+     * Create a scheduler
+     *
+     * @param maxAge how long a fetched table stays fresh
+     * @param refreshAt the fraction of maxAge after which a table is
+     * refreshed, e.g. 0.8
+     * @param jitter the random spread of every delay as a fraction of it, e.g.
+     * 0.1 for plus or minus 10%
+     * @param minBackoff the delay before the first retry of a failed fetch,
+     * doubled on every further failure up to the refresh interval
+     * @param unit the time unit of maxAge and minBackoff
+     * @param threads the count of fetches running at a time
+     * @param loader the loader fetching the table of a base currency
+     */
+    public RefreshScheduler(long maxAge, double refreshAt, double jitter, long minBackoff, TimeUnit unit, int threads, RateCache.Loader loader) {
+        if (maxAge <= 0 || minBackoff <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("Maximum age, backoff and thread count must be positive");
+        } else if (!(refreshAt > 0 && refreshAt <= 1) || !(jitter >= 0 && jitter < 1)) {
+            throw new IllegalArgumentException("Refresh point must be within (0, 1] and jitter within [0, 1)");
+        }
+        this.maxAgeNanos = unit.toNanos(maxAge);
+        this.refreshNanos = Math.max(1, (long) (maxAgeNanos * refreshAt));
+        this.minBackoffNanos = Math.min(unit.toNanos(minBackoff), refreshNanos);
+        this.jitter = jitter;
+        this.loader = loader;
+        this.executor = new ScheduledThreadPoolExecutor(threads, (Runnable task) -> {
+            Thread thread = new Thread(task, "jsoncurrency-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Keep a base currency warm, fetching its table now in the background
+     *
+     * @param baseCurrencyCode the base currency code
+     */
+    public void schedule(String baseCurrencyCode) {
+        String key = baseCurrencyCode.toUpperCase();
+        Entry entry = new Entry(key);
+        if (entries.putIfAbsent(key, entry) == null) {
+            submit(entry, 0);
+        }
+    }
+
+    /**
+     * Keep many base currencies warm, see schedule()
+     *
+     * @param baseCurrencyCodes the base currency codes
+     */
+    public void scheduleAll(Collection<String> baseCurrencyCodes) {
+        for (String baseCurrencyCode : baseCurrencyCodes) {
+            schedule(baseCurrencyCode);
+        }
+    }
+
+    /**
+     * Stop refreshing a base currency and forget its table
+     *
+     * @param baseCurrencyCode the base currency code
+     */
+    public void unschedule(String baseCurrencyCode) {
+        entries.remove(baseCurrencyCode.toUpperCase());
+    }
+
+    /**
+     * Get the scheduled base currencies
+     *
+     * @return unmodifiable set of upper case base currency codes
+     */
+    public Set<String> getBaseCurrencyCodes() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    /**
+     * Get the last fetched table of a base currency, however old it is
+     *
+     * @param baseCurrencyCode the base currency code
+     * @return unmodifiable Currency exchange list, or null if the base is not
+     * scheduled or not fetched yet
+     */
+    public List<Currency> getTable(String baseCurrencyCode) {
+        Entry entry = entries.get(baseCurrencyCode.toUpperCase());
+        return (entry != null) ? entry.currencies : null;
+    }
+
+    /**
+     * Get the age of the last fetched table of a base currency
+     *
+     * @param baseCurrencyCode the base currency code
+     * @param unit the time unit to return
+     * @return age of the table, -1 if there is none
+     */
+    public long getAge(String baseCurrencyCode, TimeUnit unit) {
+        Entry entry = entries.get(baseCurrencyCode.toUpperCase());
+        if (entry == null || entry.currencies == null) {
+            return -1;
+        }
+        return unit.convert(System.nanoTime() - entry.loadedAt, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Check whether the table of a base currency is older than the maximum
+     * age, i.e. its refreshes kept failing
+     *
+     * @param baseCurrencyCode the base currency code
+     * @return true if the table is stale or there is none
+     */
+    public boolean isStale(String baseCurrencyCode) {
+        long age = getAge(baseCurrencyCode, TimeUnit.NANOSECONDS);
+        return age < 0 || age >= maxAgeNanos;
+    }
+
+    /**
+     * Get the count of successful fetches
+     *
+     * @return refresh count
+     */
+    public long getRefreshCount() {
+        return refreshes.sum();
+    }
+
+    /**
+     * Get the count of failed fetches
+     *
+     * @return refresh failure count
+     */
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    /**
+     * Stop refreshing every base currency
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        entries.clear();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RefreshScheduler[bases=%d, refreshes=%d, failures=%d]", entries.size(), getRefreshCount(), getFailureCount());
+    }
+
+    private void refresh(Entry entry) {
+        if (entries.get(entry.baseCurrencyCode) != entry) {
+            return; // unscheduled
+        }
+        Metrics metrics = CurrencyParser.getMetrics();
+        long start = System.nanoTime(), delay;
+        try {
+            entry.currencies = Collections.unmodifiableList(loader.load(entry.baseCurrencyCode));
+            entry.loadedAt = System.nanoTime();
+            entry.failures = 0;
+            refreshes.increment();
+            if (metrics != null) {
+                metrics.record("refresh", entry.loadedAt - start);
+            }
+            delay = jittered(refreshNanos);
+        } catch (Exception e) {
+            entry.failures++;
+            failures.increment();
+            if (metrics != null) {
+                metrics.recordFailure("refresh");
+            }
+            long backoff = minBackoffNanos;
+            for (int i = 1; i < entry.failures && backoff < refreshNanos; i++) {
+                backoff *= 2;
+            }
+            delay = jittered(Math.min(backoff, refreshNanos));
+            Logger.getLogger(RefreshScheduler.class.getName()).log(Level.WARNING, "Could not refresh " + entry.baseCurrencyCode
+                    + " exchange information, retrying in " + TimeUnit.NANOSECONDS.toMillis(delay) + " ms", e);
+        }
+        submit(entry, delay);
+    }
+
+    private void submit(final Entry entry, long delayNanos) {
+        if (entries.get(entry.baseCurrencyCode) != entry) {
+            return;
+        }
+        try {
+            executor.schedule(() -> refresh(entry), delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closed
+        }
+    }
+
+    private long jittered(long nanos) {
+        return (long) (nanos * (1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1)));
+    }
+}
@@ -0,0 +1,465 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * On-disk snapshot of parsed currency exchange lists, so a fresh process can
+ * answer from the last known rates before going to the network. The snapshot
+ * is a compact binary file written atomically (temporary file + rename) and
+ * loaded through a memory-mapped FileChannel without any JSON parsing; the
+ * records of a base are only decoded when that base is asked for. With a write
+ * delay, the updates made within the delay are written together once.
+ * <br>File layout (big-endian):
+ * <pre>
+ * header     : magic "JCSN", version (short), reserved (short), createdAt (long),
+ *              codeCount, baseCount, recordCount, recordsOffset (int)
+ * dictionary : codeCount x { code length (byte), code (ASCII), name length (short), name (UTF-8) }
+ * bases      : baseCount x { code index (short), reserved (short), fetchedAt (long), first record, record count (int) }
+ * records    : recordCount x { target code index (short), rate (double), inverse rate (double), publishedAt (long) }
+ * </pre>
+ * Version 1 snapshots, whose records have no publishedAt, are still read.
+ *
+ * @author ShinyDove
+ */
+public class SnapshotStore {
+
+    private static final int MAGIC = 0x4A43534E; // "JCSN"
+    private static final short VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 2 + 2 + 8 + 4 * 4;
+    private static final int BASE_SIZE = 2 + 2 + 8 + 4 + 4;
+    private static final int RECORD_SIZE = 2 + 8 + 8 + 8;
+    private static final int RECORD_SIZE_V1 = 2 + 8 + 8;
+
+    /**
+     * A base table as stored in the snapshot, decoded on first use
+     */
+    private static final class StoredTable {
+
+        final long fetchedAt;
+        final int firstRecord, recordCount;
+        volatile List<Currency> currencies;
+
+        StoredTable(long fetchedAt, int firstRecord, int recordCount, List<Currency> currencies) {
+            this.fetchedAt = fetchedAt;
+            this.firstRecord = firstRecord;
+            this.recordCount = recordCount;
+            this.currencies = currencies;
+        }
+    }
+
+    private final Path file;
+    private final long writeDelayMillis;
+    private final ScheduledThreadPoolExecutor writer;
+    private final Map<String, StoredTable> tables = new HashMap<>();
+    private MappedByteBuffer mapped;
+    private String[] codes, names;
+    private int recordsOffset, recordSize;
+    private long createdAt;
+    private boolean dirty, writeScheduled;
+
+    /**
+     * Create a snapshot store backed by a file, writing it on every update.
+     * Call load() to read it.
+     *
+     * @param file the snapshot file
+     */
+    public SnapshotStore(Path file) {
+        this.file = file;
+        this.writeDelayMillis = 0;
+        this.writer = null;
+    }
+
+    /**
+     * Create a snapshot store backed by a file, writing it in the background
+     * once the write delay has passed since the first unwritten update, and
+     * when the JVM exits. Call load() to read it.
+     *
+     * @param file the snapshot file
+     * @param writeDelay the delay to gather updates in before writing
+     * @param unit the time unit of writeDelay
+     */
+    public SnapshotStore(Path file, long writeDelay, TimeUnit unit) {
+        if (writeDelay <= 0) {
+            throw new IllegalArgumentException("Write delay must be positive");
+        }
+        this.file = file;
+        this.writeDelayMillis = unit.toMillis(writeDelay);
+        this.writer = new ScheduledThreadPoolExecutor(1, (Runnable task) -> {
+            Thread thread = new Thread(task, "jsoncurrency-snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Runtime.getRuntime().addShutdownHook(new Thread(this::writeQuietly));
+    }
+
+    /**
+     * Get the snapshot file
+     *
+     * @return snapshot file path
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Map the snapshot file into memory and read its header, dictionary and
+     * base directory, and check that every record refers to the dictionary.
+     * Records are decoded lazily by getTable().
+     *
+     * @return false if there is no snapshot file yet
+     * @throws IOException if the file could not be read, is not a snapshot or
+     * is corrupted
+     */
+    public synchronized boolean load() throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException(file + " is not a currency snapshot");
+        }
+        short version = buffer.getShort();
+        if (version != VERSION && version != 1) {
+            throw new IOException(file + " has an unsupported snapshot version");
+        }
+        int size = (version == 1) ? RECORD_SIZE_V1 : RECORD_SIZE;
+        buffer.getShort();
+        long created = buffer.getLong();
+        int codeCount = buffer.getInt(), baseCount = buffer.getInt(), recordCount = buffer.getInt(), offset = buffer.getInt();
+        if (codeCount < 0 || baseCount < 0 || recordCount < 0 || offset < HEADER_SIZE) {
+            throw new IOException(file + " is corrupted");
+        } else if ((long) offset + (long) recordCount * size > buffer.capacity()) {
+            throw new IOException(file + " is truncated");
+        }
+
+        // Every entry takes at least its two length fields
+        if ((long) codeCount * 3 > offset - HEADER_SIZE) {
+            throw new IOException(file + " has a corrupted dictionary");
+        }
+        String[] codeList = new String[codeCount], nameList = new String[codeCount];
+        for (int i = 0; i < codeCount; i++) {
+            codeList[i] = readString(buffer, 1, offset);
+            nameList[i] = readString(buffer, 2, offset);
+        }
+
+        if (buffer.position() + (long) baseCount * BASE_SIZE > offset) {
+            throw new IOException(file + " has a corrupted base directory");
+        }
+        Map<String, StoredTable> stored = new LinkedHashMap<>();
+        for (int i = 0; i < baseCount; i++) {
+            int codeIndex = buffer.getShort() & 0xFFFF;
+            if (codeIndex >= codeCount) {
+                throw new IOException(file + " has a corrupted base directory");
+            }
+            String code = codeList[codeIndex];
+            buffer.getShort();
+            long fetchedAt = buffer.getLong();
+            int first = buffer.getInt(), count = buffer.getInt();
+            if (first < 0 || count < 0 || (long) first + count > recordCount) {
+                throw new IOException(file + " has a corrupted base directory");
+            }
+            stored.put(code, new StoredTable(fetchedAt, first, count, null));
+        }
+        for (int i = 0; i < recordCount; i++) {
+            if ((buffer.getShort(offset + i * size) & 0xFFFF) >= codeCount) {
+                throw new IOException(file + " has a corrupted record");
+            }
+        }
+
+        mapped = buffer;
+        codes = codeList;
+        names = nameList;
+        recordsOffset = offset;
+        recordSize = size;
+        createdAt = created;
+        tables.clear();
+        tables.putAll(stored);
+        return true;
+    }
+
+    /**
+     * Get a base currency table from the snapshot
+     *
+     * @param sourceCurrencyCode the base currency code
+     * @return unmodifiable Currency exchange list, or null if the base is not
+     * in the snapshot
+     */
+    public List<Currency> getTable(String sourceCurrencyCode) {
+        String base = sourceCurrencyCode.toUpperCase();
+        StoredTable table;
+        synchronized (this) {
+            table = tables.get(base);
+            if (table == null) {
+                return null;
+            } else if (table.currencies == null) {
+                table.currencies = decode(base, table);
+            }
+        }
+        return table.currencies;
+    }
+
+    /**
+     * Get the time a base currency table was fetched
+     *
+     * @param sourceCurrencyCode the base currency code
+     * @return fetch time in milliseconds since the epoch, or -1 if the base is
+     * not in the snapshot
+     */
+    public synchronized long getFetchedAt(String sourceCurrencyCode) {
+        StoredTable table = tables.get(sourceCurrencyCode.toUpperCase());
+        return (table == null) ? -1 : table.fetchedAt;
+    }
+
+    /**
+     * Get the base currencies in the snapshot
+     *
+     * @return base currency codes (upper case), sorted
+     */
+    public synchronized Set<String> getBaseCodes() {
+        return Collections.unmodifiableSet(new TreeSet<>(tables.keySet()));
+    }
+
+    /**
+     * Get the time the snapshot file was written
+     *
+     * @return write time in milliseconds since the epoch, or 0 if nothing was
+     * loaded or written yet
+     */
+    public synchronized long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Replace a base currency table and write the snapshot file, or schedule
+     * the write if there is a write delay
+     *
+     * @param sourceCurrencyCode the base currency code
+     * @param currencies Currency exchange list of the base currency
+     * @throws IOException if the snapshot could not be written
+     */
+    public void update(String sourceCurrencyCode, List<Currency> currencies) throws IOException {
+        updateAll(Collections.singletonMap(sourceCurrencyCode, currencies));
+    }
+
+    /**
+     * Replace several base currency tables and write the snapshot file once,
+     * or schedule the write if there is a write delay
+     *
+     * @param currencyLists map of base currency code to its currency exchange list
+     * @throws IOException if the snapshot could not be written
+     */
+    public synchronized void updateAll(Map<String, ? extends List<Currency>> currencyLists) throws IOException {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, ? extends List<Currency>> currencyList : currencyLists.entrySet()) {
+            List<Currency> currencies = Collections.unmodifiableList(new ArrayList<>(currencyList.getValue()));
+            tables.put(currencyList.getKey().toUpperCase(), new StoredTable(now, 0, currencies.size(), currencies));
+        }
+        dirty = true;
+        if (writer == null) {
+            flush();
+        } else if (!writeScheduled) {
+            // Later updates within the delay are written along with this one
+            writeScheduled = true;
+            writer.schedule(this::writeQuietly, writeDelayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Write the snapshot file now if there are unwritten updates
+     *
+     * @throws IOException if the snapshot could not be written
+     */
+    public synchronized void flush() throws IOException {
+        writeScheduled = false;
+        if (dirty) {
+            write(System.currentTimeMillis());
+            dirty = false;
+        }
+    }
+
+    /**
+     * Flush from the background writer or the shutdown hook, where failures
+     * can only be logged
+     */
+    private void writeQuietly() {
+        try {
+            flush();
+        } catch (IOException e) {
+            Logger.getLogger(SnapshotStore.class.getName()).log(Level.WARNING, "Could not write currency snapshot " + file, e);
+        }
+    }
+
+    /**
+     * Write every table to a temporary file and atomically move it over the
+     * snapshot file
+     */
+    private void write(long now) throws IOException {
+        // Decode whatever is still only in the mapped file, it is replaced below
+        Map<String, List<Currency>> all = new LinkedHashMap<>();
+        for (Map.Entry<String, StoredTable> table : tables.entrySet()) {
+            StoredTable stored = table.getValue();
+            all.put(table.getKey(), (stored.currencies != null) ? stored.currencies : decode(table.getKey(), stored));
+        }
+
+        // Dictionary of every base and target code
+        Map<String, Integer> indexes = new LinkedHashMap<>();
+        List<String> nameList = new ArrayList<>();
+        int recordCount = 0;
+        for (Map.Entry<String, List<Currency>> table : all.entrySet()) {
+            indexOf(indexes, nameList, table.getKey(), "");
+            for (Currency curr : table.getValue()) {
+                indexOf(indexes, nameList, curr.getTargetCurrencyCode(), curr.getTargetCurrencyExchangeName());
+            }
+            recordCount += table.getValue().size();
+        }
+        if (indexes.size() > 0xFFFF) {
+            throw new IOException("Too many currency codes for a snapshot");
+        }
+
+        List<byte[]> encodedCodes = new ArrayList<>(), encodedNames = new ArrayList<>();
+        int dictionarySize = 0;
+        for (String code : indexes.keySet()) {
+            byte[] encodedCode = code.getBytes(StandardCharsets.US_ASCII);
+            byte[] encodedName = nameList.get(encodedCodes.size()).getBytes(StandardCharsets.UTF_8);
+            if (encodedCode.length > 0xFF || encodedName.length > 0xFFFF) {
+                throw new IOException("Currency code or name too long for a snapshot: " + code);
+            }
+            encodedCodes.add(encodedCode);
+            encodedNames.add(encodedName);
+            dictionarySize += 1 + encodedCode.length + 2 + encodedName.length;
+        }
+
+        int offset = HEADER_SIZE + dictionarySize + all.size() * BASE_SIZE;
+        ByteBuffer buffer = ByteBuffer.allocate(offset + recordCount * RECORD_SIZE);
+        buffer.putInt(MAGIC).putShort(VERSION).putShort((short) 0).putLong(now);
+        buffer.putInt(indexes.size()).putInt(all.size()).putInt(recordCount).putInt(offset);
+        for (int i = 0; i < encodedCodes.size(); i++) {
+            buffer.put((byte) encodedCodes.get(i).length).put(encodedCodes.get(i));
+            buffer.putShort((short) encodedNames.get(i).length).put(encodedNames.get(i));
+        }
+        int first = 0;
+        for (Map.Entry<String, List<Currency>> table : all.entrySet()) {
+            buffer.putShort((short) (int) indexes.get(table.getKey())).putShort((short) 0);
+            buffer.putLong(tables.get(table.getKey()).fetchedAt).putInt(first).putInt(table.getValue().size());
+            first += table.getValue().size();
+        }
+        for (List<Currency> currencies : all.values()) {
+            for (Currency curr : currencies) {
+                buffer.putShort((short) (int) indexes.get(curr.getTargetCurrencyCode().toUpperCase()));
+                buffer.putDouble(curr.getExchangeRate()).putDouble(curr.getReverseExchangeRate()).putLong(curr.getPublishedAt());
+            }
+        }
+        buffer.flip();
+
+        Path parent = file.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        // Every table is in memory now, the old mapping is no longer needed
+        for (Map.Entry<String, List<Currency>> table : all.entrySet()) {
+            long fetchedAt = tables.get(table.getKey()).fetchedAt;
+            tables.put(table.getKey(), new StoredTable(fetchedAt, 0, table.getValue().size(), table.getValue()));
+        }
+        mapped = null;
+        codes = names = null;
+        createdAt = now;
+    }
+
+    private List<Currency> decode(String base, StoredTable table) {
+        ByteBuffer records = mapped.duplicate();
+        records.position(recordsOffset + table.firstRecord * recordSize);
+        List<Currency> currencies = new ArrayList<>(table.recordCount);
+        for (int i = 0; i < table.recordCount; i++) {
+            int target = records.getShort() & 0xFFFF;
+            double rate = records.getDouble(), inverseRate = records.getDouble();
+            long publishedAt = (recordSize == RECORD_SIZE) ? records.getLong() : 0;
+            currencies.add(new Currency(names[target], base, codes[target], rate, inverseRate, publishedAt));
+        }
+        return Collections.unmodifiableList(currencies);
+    }
+
+    private static int indexOf(Map<String, Integer> indexes, List<String> names, String code, String name) {
+        String key = code.toUpperCase();
+        Integer index = indexes.get(key);
+        if (index == null) {
+            index = indexes.size();
+            indexes.put(key, index);
+            names.add(name);
+        } else if (names.get(index).isEmpty() && !name.isEmpty()) {
+            names.set(index, name);
+        }
+        return index;
+    }
+
+    /**
+     * Read a string of the dictionary, prefixed by its length in lengthSize
+     * bytes, which must end before limit
+     */
+    private String readString(ByteBuffer buffer, int lengthSize, int limit) throws IOException {
+        if (buffer.position() + lengthSize > limit) {
+            throw new IOException(file + " has a corrupted dictionary");
+        }
+        int length = (lengthSize == 1) ? buffer.get() & 0xFF : buffer.getShort() & 0xFFFF;
+        if (buffer.position() + length > limit) {
+            throw new IOException(file + " has a corrupted dictionary");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Render currency exchange tables as text (the command line layout), CSV or
+ * JSON Lines. Rows are written into one reused StringBuilder with a
+ * fixed-precision number formatter instead of a Formatter per row, and the
+ * builder is flushed in large chunks to an Appendable (e.g. a PrintStream) or
+ * encoded into a byte channel. CSV and JSON Lines rows carry every column of
+ * a currency whichever text columns were asked for, with rates at full
+ * precision.
+ * <br> Example: <code>new TableRenderer(System.out, TableRenderer.Format.CSV)</code>
+ *
+ * @author ShinyDove
+ */
+public class TableRenderer implements Flushable, Closeable {
+
+    /**
+     * Output format of a renderer
+     */
+    public enum Format {
+        TEXT, CSV, JSONL;
+
+        /**
+         * Find a format by name
+         *
+         * @param name the format name (any case), e.g. "csv"
+         * @return the format
+         * @throws IllegalArgumentException if no format has that name
+         */
+        public static Format forName(String name) {
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(name)) {
+                    return format;
+                }
+            }
+            throw new IllegalArgumentException("No table format named " + name);
+        }
+    }
+
+    /**
+     * Characters gathered before they are flushed
+     */
+    private static final int CHUNK_SIZE = 8192;
+
+    /**
+     * Scaled values below this use the fast formatting path, as their
+     * fraction is still exact to well below a unit
+     */
+    private static final double FAST_LIMIT = 1e15;
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final Format format;
+    private final StringBuilder row = new StringBuilder(CHUNK_SIZE + 256);
+    private final Appendable appendable;
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer bytes;
+    private boolean headerWritten;
+
+    /**
+     * Create a renderer flushing into an Appendable, e.g. a PrintStream
+     *
+     * @param out the output to flush into
+     * @param format the output format
+     */
+    public TableRenderer(Appendable out, Format format) {
+        this.format = format;
+        this.appendable = out;
+        this.channel = null;
+        this.encoder = null;
+        this.bytes = null;
+    }
+
+    /**
+     * Create a renderer encoding into a byte channel, e.g. the channel of a
+     * FileOutputStream
+     *
+     * @param channel the channel to write into
+     * @param charset the charset to encode with
+     * @param format the output format
+     */
+    public TableRenderer(WritableByteChannel channel, Charset charset, Format format) {
+        this.format = format;
+        this.appendable = null;
+        this.channel = channel;
+        this.encoder = charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.bytes = ByteBuffer.allocateDirect((int) (CHUNK_SIZE * encoder.maxBytesPerChar()) + 1024);
+    }
+
+    /**
+     * Get the output format
+     *
+     * @return output format
+     */
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Start a table: the title and rule lines as text, the column header as
+     * CSV (once per renderer), nothing as JSON Lines
+     *
+     * @param title the title line of the text table
+     * @param rule the line under the title of the text table
+     * @throws IOException if the output could not be written
+     */
+    public void begin(String title, String rule) throws IOException {
+        if (format == Format.TEXT) {
+            row.append(title).append(System.lineSeparator()).append(rule).append(System.lineSeparator());
+        } else if (format == Format.CSV && !headerWritten) {
+            row.append("base,code,name,rate,inverseRate").append(System.lineSeparator());
+        }
+        headerWritten = true;
+        flushIfFull();
+    }
+
+    /**
+     * Write a text line, ignored by CSV and JSON Lines
+     *
+     * @param line the text line
+     * @throws IOException if the output could not be written
+     */
+    public void line(String line) throws IOException {
+        if (format == Format.TEXT) {
+            row.append(line).append(System.lineSeparator());
+            flushIfFull();
+        }
+    }
+
+    /**
+     * Write a currency with both rates, as text "name : code rate | code rate"
+     *
+     * @param curr the currency
+     * @param local show the local currency column first instead of the target
+     * currency column?
+     * @throws IOException if the output could not be written
+     */
+    public void exchange(Currency curr, boolean local) throws IOException {
+        if (format != Format.TEXT) {
+            record(curr);
+            return;
+        }
+        appendPadded(row, curr.getTargetCurrencyExchangeName(), 30).append(" : ");
+        if (local) {
+            row.append(curr.getLocalCurrencyCode()).append(' ');
+            appendFixed(row, curr.getReverseExchangeRate(), 5, 15).append(" | ").append(curr.getTargetCurrencyCode()).append(' ');
+            appendFixed(row, curr.getExchangeRate(), 5, 15);
+        } else {
+            row.append(curr.getTargetCurrencyCode()).append(' ');
+            appendFixed(row, curr.getExchangeRate(), 5, 15).append(" | ").append(curr.getLocalCurrencyCode()).append(' ');
+            appendFixed(row, curr.getReverseExchangeRate(), 5, 15);
+        }
+        row.append(System.lineSeparator());
+        flushIfFull();
+    }
+
+    /**
+     * Write a currency with one rate, as text "name : code rate"
+     *
+     * @param curr the currency
+     * @param buys show the rate to buy the target currency (in local currency)
+     * instead of the rate to sell the local currency (in target currency)?
+     * @throws IOException if the output could not be written
+     */
+    public void rate(Currency curr, boolean buys) throws IOException {
+        if (format != Format.TEXT) {
+            record(curr);
+            return;
+        }
+        appendPadded(row, curr.getTargetCurrencyExchangeName(), 30).append(" : ");
+        if (buys) {
+            row.append(curr.getLocalCurrencyCode()).append(' ');
+            appendFixed(row, curr.getReverseExchangeRate(), 5, 15);
+        } else {
+            row.append(curr.getTargetCurrencyCode()).append(' ');
+            appendFixed(row, curr.getExchangeRate(), 5, 15);
+        }
+        row.append(System.lineSeparator());
+        flushIfFull();
+    }
+
+    /**
+     * Write everything rendered so far to the output
+     *
+     * @throws IOException if the output could not be written
+     */
+    @Override
+    public void flush() throws IOException {
+        writeRows();
+        if (appendable instanceof Flushable) {
+            ((Flushable) appendable).flush();
+        }
+    }
+
+    /**
+     * Flush, leaving the output open
+     *
+     * @throws IOException if the output could not be written
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    /**
+     * Append a number with a fixed count of decimals, right aligned, giving
+     * the same text as String.format("%(width).(decimals)f", value)
+     *
+     * @param str the builder to append into
+     * @param value the number
+     * @param decimals the count of decimals, at most 18
+     * @param width the minimum width, padded with leading spaces
+     * @return str
+     */
+    public static StringBuilder appendFixed(StringBuilder str, double value, int decimals, int width) {
+        if (decimals < 0 || decimals >= POWERS_OF_TEN.length) {
+            throw new IllegalArgumentException("Decimals must be between 0 and " + (POWERS_OF_TEN.length - 1));
+        }
+        int start = str.length();
+        boolean negative = Double.doubleToRawLongBits(value) < 0;
+        double magnitude = Math.abs(value);
+        double scaled = magnitude * POWERS_OF_TEN[decimals];
+
+        if (scaled < FAST_LIMIT) {
+            double floor = Math.floor(scaled), fraction = scaled - floor;
+            // Formatter rounds the shortest decimal form of the value half up, which only
+            // differs from rounding the scaled binary value when it is about half way
+            if (Math.abs(fraction - 0.5) > 2 * Math.ulp(scaled)) {
+                long units = (long) floor + ((fraction > 0.5) ? 1 : 0);
+                if (negative) {
+                    str.append('-');
+                }
+                long whole = units / POWERS_OF_TEN[decimals];
+                str.append(whole);
+                if (decimals > 0) {
+                    str.append('.');
+                    long rest = units - whole * POWERS_OF_TEN[decimals];
+                    for (int digit = decimals - 1; digit >= 0; digit--) {
+                        str.append((char) ('0' + rest / POWERS_OF_TEN[digit] % 10));
+                    }
+                }
+                return pad(str, start, width);
+            }
+        }
+
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            str.append(Double.isNaN(value) ? "NaN" : negative ? "-Infinity" : "Infinity");
+        } else {
+            if (negative) {
+                str.append('-');
+            }
+            str.append(new BigDecimal(Double.toString(magnitude)).setScale(decimals, RoundingMode.HALF_UP).toPlainString());
+        }
+        return pad(str, start, width);
+    }
+
+    private static StringBuilder pad(StringBuilder str, int start, int width) {
+        int padding = width - (str.length() - start);
+        for (int i = 0; i < padding; i++) {
+            str.insert(start, ' ');
+        }
+        return str;
+    }
+
+    private static StringBuilder appendPadded(StringBuilder str, String text, int width) {
+        str.append(text);
+        for (int i = text.length(); i < width; i++) {
+            str.append(' ');
+        }
+        return str;
+    }
+
+    /**
+     * Write every column of a currency as a CSV or JSON Lines record
+     */
+    private void record(Currency curr) throws IOException {
+        if (format == Format.CSV) {
+            appendCsv(curr.getLocalCurrencyCode()).append(',');
+            appendCsv(curr.getTargetCurrencyCode()).append(',');
+            appendCsv(curr.getTargetCurrencyExchangeName()).append(',');
+            row.append(curr.getExchangeRate()).append(',').append(curr.getReverseExchangeRate());
+        } else {
+            row.append("{\"base\":");
+            appendJson(curr.getLocalCurrencyCode()).append(",\"code\":");
+            appendJson(curr.getTargetCurrencyCode()).append(",\"name\":");
+            appendJson(curr.getTargetCurrencyExchangeName()).append(",\"rate\":");
+            appendJsonNumber(curr.getExchangeRate()).append(",\"inverseRate\":");
+            appendJsonNumber(curr.getReverseExchangeRate()).append('}');
+        }
+        row.append(System.lineSeparator());
+        flushIfFull();
+    }
+
+    private StringBuilder appendCsv(String value) {
+        boolean quoted = false;
+        for (int i = 0; i < value.length() && !quoted; i++) {
+            char c = value.charAt(i);
+            quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quoted) {
+            return row.append(value);
+        }
+        row.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            row.append(c);
+            if (c == '"') {
+                row.append('"');
+            }
+        }
+        return row.append('"');
+    }
+
+    private StringBuilder appendJson(String value) {
+        row.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                row.append('\\').append(c);
+            } else if (c < 0x20) {
+                row.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+            } else {
+                row.append(c);
+            }
+        }
+        return row.append('"');
+    }
+
+    private StringBuilder appendJsonNumber(double value) {
+        // JSON has no NaN or Infinity
+        return (Double.isNaN(value) || Double.isInfinite(value)) ? row.append("null") : row.append(value);
+    }
+
+    private void flushIfFull() throws IOException {
+        if (row.length() >= CHUNK_SIZE) {
+            writeRows();
+        }
+    }
+
+    private void writeRows() throws IOException {
+        if (row.length() > 0) {
+            if (appendable != null) {
+                appendable.append(row);
+            } else {
+                encode(CharBuffer.wrap(row));
+            }
+            row.setLength(0);
+        }
+    }
+
+    private void encode(CharBuffer chars) throws IOException {
+        encoder.reset();
+        CoderResult result;
+        do {
+            result = encoder.encode(chars, bytes, true);
+            if (result.isOverflow() || !chars.hasRemaining()) {
+                drain();
+            }
+        } while (result.isOverflow());
+        while (encoder.flush(bytes).isOverflow()) {
+            drain();
+        }
+        drain();
+    }
+
+    private void drain() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019 Hydra Indonesia
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package id.hydra.utils;
+
+import org.json.JSONException;
+
+/**
+ * Thrown when the exchange table of a base currency has no entry for the
+ * requested target currency. It is a JSONException with the message the
+ * JSONObject lookup used to give, so callers catching JSONException keep
+ * working, while a malformed feed can be told apart from an unknown currency.
+ *
+ * @author ShinyDove
+ */
+public class UnknownCurrencyException extends JSONException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String targetCurrencyCode;
+
+    /**
+     * Create an exception for a target currency missing from a table
+     *
+     * @param targetCurrencyCode the requested target currency code
+     */
+    public UnknownCurrencyException(String targetCurrencyCode) {
+        super("JSONObject[\"" + targetCurrencyCode.toLowerCase() + "\"] not found.");
+        this.targetCurrencyCode = targetCurrencyCode.toUpperCase();
+    }
+
+    /**
+     * Get the requested target currency code
+     *
+     * @return upper case target currency code
+     */
+    public String getTargetCurrencyCode() {
+        return targetCurrencyCode;
+    }
+}